@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writer stage between test generation and the output sink.
+ * Generator threads hand off encoded test files through a bounded queue and continue
+ * immediately; a small pool of I/O threads writes them to the sink. When the queue is full,
+ * submitting blocks, so the number of files held in memory stays bounded.
+ * With one I/O thread, files reach the sink in the order they were submitted.
+ */
+public class AsyncWriteStage implements AutoCloseable {
+
+    // Tells an I/O thread that no more files will be submitted
+    private static final PendingFile END = new PendingFile(null, null);
+    // How often a submitter blocked on a full queue checks whether writing has failed
+    private static final long FAILURE_CHECK_MILLIS = 100;
+
+    private final OutputSink sink;
+    private final BlockingQueue<PendingFile> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    public AsyncWriteStage(OutputSink sink, int ioThreads, int queueCapacity) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        for (int i = 0; i < ioThreads; i++) {
+            Thread writer = new Thread(this::drain, "test-writer-" + (i + 1));
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    /**
+     * Queue a file for writing, waiting while the queue is full; fails as soon as a write has failed
+     */
+    public void submit(String fileName, byte[] content) throws IOException, InterruptedException {
+        PendingFile file = new PendingFile(fileName, content);
+        checkFailure();
+        while (!queue.offer(file, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * Wait until all queued files are written and the I/O threads have stopped
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (int i = 0; i < writers.size(); i++) {
+                queue.put(END);
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for test files to be written");
+        }
+        checkFailure();
+    }
+
+    private void drain() {
+        while (true) {
+            PendingFile file;
+            try {
+                file = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (file == END) {
+                return;
+            }
+            // Keep draining after a failure so that submitting threads are never blocked forever
+            if (failure.get() == null) {
+                try {
+                    sink.write(file.fileName, out -> out.write(file.content));
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, new IOException("Could not write " + file.fileName + ": " + e, e));
+                }
+            }
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private static final class PendingFile {
+        final String fileName;
+        final byte[] content;
+
+        PendingFile(String fileName, byte[] content) {
+            this.fileName = fileName;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+import java.util.stream.Stream;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Validates generated cases against one schema, reusing a Validator per worker thread
+ * and returning structured results instead of printing them
+ */
+public class BatchValidator {
+
+    private final SchemaCache schemaCache;
+    private final String schemaFile;
+    private final Collection<String> schemaClosure;
+    // Validator instances are not thread-safe, so each thread keeps its own for the current schema
+    private final ThreadLocal<Map<Schema, Validator>> validators = ThreadLocal.withInitial(IdentityHashMap::new);
+
+    public BatchValidator(SchemaCache schemaCache, String schemaFile, Collection<String> schemaClosure) {
+        this.schemaCache = schemaCache;
+        this.schemaFile = schemaFile;
+        this.schemaClosure = schemaClosure;
+    }
+
+    /**
+     * Validate a single document. Only a document the validator rejects is invalid; a schema
+     * that does not compile or a document that cannot be read gives an error result.
+     */
+    public ValidationResult validate(String caseId, Source source, boolean expectValid) {
+        Validator validator;
+        try {
+            validator = getValidator(schemaCache.getSchema(schemaFile, schemaClosure));
+        } catch (SAXException | IOException e) {
+            return ValidationResult.error(caseId, expectValid, "Schema " + schemaFile + " could not be compiled: " + e.getMessage());
+        }
+        try {
+            validator.validate(source);
+            return new ValidationResult(caseId, expectValid, true, null, -1, -1);
+        } catch (SAXParseException e) {
+            return new ValidationResult(caseId, expectValid, false, e.getMessage(), e.getLineNumber(), e.getColumnNumber());
+        } catch (SAXException e) {
+            return new ValidationResult(caseId, expectValid, false, e.getMessage(), -1, -1);
+        } catch (IOException e) {
+            return ValidationResult.error(caseId, expectValid, "Could not read " + caseId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validate a stream of generated cases; parallel streams are supported
+     */
+    public ValidationReport validateAll(Stream<GeneratedCase> cases) {
+        ValidationReport report = new ValidationReport();
+        cases.forEach(c -> report.add(validate(c.id, new StreamSource(new StringReader(c.content), c.id), c.expectValid)));
+        return report;
+    }
+
+    private Validator getValidator(Schema schema) {
+        Map<Schema, Validator> threadValidators = validators.get();
+        Validator validator = threadValidators.get(schema);
+        if (validator == null) {
+            // The schema was (re)compiled; drop validators of the previous version
+            threadValidators.clear();
+            validator = schema.newValidator();
+            threadValidators.put(schema, validator);
+        } else {
+            validator.reset();
+        }
+        return validator;
+    }
+}
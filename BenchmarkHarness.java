@@ -0,0 +1,176 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Runner for the benchmark suites, doing what JMH would: each fork runs the suite in a fresh
+ * JVM, every benchmark runs warmup iterations before its measured ones, and results are
+ * consumed so the JIT cannot drop the work. The mean time per operation over the measured
+ * iterations of all forks is reported with its standard deviation.
+ * JMH itself cannot be used here, because it only accepts benchmarks in a named package and
+ * the classes they measure are all in the default package.
+ *
+ * Options, before the suite's own arguments:
+ * --forks n (default 2, 0 runs in this JVM), --warmup n and --iterations n (default 5 each),
+ * --time ms (length of one iteration, default 200)
+ */
+public final class BenchmarkHarness {
+
+    /**
+     * A benchmark suite; registers its benchmarks with the harness
+     */
+    public interface Suite {
+        void run(BenchmarkHarness harness, String[] args) throws Exception;
+    }
+
+    private static final String FORKED = "--forked";
+    private static final String RESULT = "@result\t";
+
+    // Results are stored here so the JIT cannot drop the benchmarked work
+    static volatile Object blackhole;
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationNanos;
+    // Time per operation of every measured iteration, by benchmark
+    private final Map<String, List<Double>> samples = new LinkedHashMap<>();
+
+    private BenchmarkHarness(int warmupIterations, int iterations, long iterationNanos) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationNanos = iterationNanos;
+    }
+
+    /**
+     * Run the suite of the given main class in forked JVMs and print the results
+     */
+    public static void run(Class<?> mainClass, String[] args, Suite suite) throws Exception {
+        int forks = 2;
+        int warmup = 5;
+        int iterations = 5;
+        long millis = 200;
+        boolean forked = false;
+        List<String> harnessArgs = new ArrayList<>();
+        int i = 0;
+        for (; i < args.length; i++) {
+            if ("--forks".equals(args[i]) && i + 1 < args.length) {
+                forks = Integer.parseInt(args[++i]);
+            } else if ("--warmup".equals(args[i]) && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+                harnessArgs.addAll(Arrays.asList(args[i - 1], args[i]));
+            } else if ("--iterations".equals(args[i]) && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+                harnessArgs.addAll(Arrays.asList(args[i - 1], args[i]));
+            } else if ("--time".equals(args[i]) && i + 1 < args.length) {
+                millis = Long.parseLong(args[++i]);
+                harnessArgs.addAll(Arrays.asList(args[i - 1], args[i]));
+            } else if (FORKED.equals(args[i])) {
+                forked = true;
+            } else {
+                break;
+            }
+        }
+        String[] suiteArgs = Arrays.copyOfRange(args, i, args.length);
+
+        BenchmarkHarness harness = new BenchmarkHarness(warmup, iterations, millis * 1_000_000L);
+        if (forked) {
+            // Report every sample to the parent JVM
+            suite.run(harness, suiteArgs);
+            for (Map.Entry<String, List<Double>> entry : harness.samples.entrySet()) {
+                for (double sample : entry.getValue()) {
+                    System.out.println(RESULT + entry.getKey() + "\t" + sample);
+                }
+            }
+            return;
+        }
+        if (forks == 0) {
+            suite.run(harness, suiteArgs);
+        }
+        for (int fork = 1; fork <= forks; fork++) {
+            System.err.println("Fork " + fork + " of " + forks);
+            harness.runFork(mainClass, harnessArgs, suiteArgs);
+        }
+        harness.print();
+    }
+
+    /**
+     * Warm up the operation, then time it over the measured iterations
+     */
+    public void bench(String name, Callable<Object> operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+        List<Double> measured = samples.computeIfAbsent(name, key -> new ArrayList<>());
+        for (int i = 0; i < iterations; i++) {
+            measured.add(iteration(operation));
+        }
+    }
+
+    // Run the operation for one iteration time, in batches grown while they are shorter than 10 ms;
+    // returns the time per operation
+    private double iteration(Callable<Object> operation) throws Exception {
+        long operations = 0;
+        long elapsed = 0;
+        int batch = 1;
+        while (elapsed < iterationNanos) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                blackhole = operation.call();
+            }
+            long batchNanos = System.nanoTime() - start;
+            elapsed += batchNanos;
+            operations += batch;
+            if (batchNanos < 10_000_000L) {
+                batch *= 2;
+            }
+        }
+        return elapsed / (double) operations;
+    }
+
+    private void runFork(Class<?> mainClass, List<String> harnessArgs, String[] suiteArgs) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.add(FORKED);
+        command.addAll(harnessArgs);
+        command.addAll(Arrays.asList(suiteArgs));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.startsWith(RESULT)) {
+                    String[] fields = line.split("\t");
+                    samples.computeIfAbsent(fields[1], key -> new ArrayList<>()).add(Double.parseDouble(fields[2]));
+                } else {
+                    System.out.println(line);
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Benchmark fork exited with status " + process.exitValue());
+        }
+    }
+
+    private void print() {
+        System.out.printf("%-60s %14s %12s %8s%n", "benchmark", "ns/op", "sd", "samples");
+        for (Map.Entry<String, List<Double>> entry : samples.entrySet()) {
+            List<Double> values = entry.getValue();
+            double mean = 0;
+            for (double value : values) {
+                mean += value;
+            }
+            mean /= values.size();
+            double squares = 0;
+            for (double value : values) {
+                squares += (value - mean) * (value - mean);
+            }
+            double deviation = values.size() > 1 ? Math.sqrt(squares / (values.size() - 1)) : 0;
+            System.out.printf("%-60s %14.0f %12.0f %8d%n", entry.getKey(), mean, deviation, values.size());
+        }
+    }
+}
@@ -9,9 +9,9 @@ public class CardinalityTestGenerator {
     private XMLSchemaTestGenerator generator;
     private TestXmlGenerator xmlGenerator;
     
-    public CardinalityTestGenerator(XMLSchemaTestGenerator generator) {
+    public CardinalityTestGenerator(XMLSchemaTestGenerator generator, SchemaContext context) {
         this.generator = generator;
-        this.xmlGenerator = new TestXmlGenerator(generator, new SchemaParser(generator));
+        this.xmlGenerator = context.getXmlGenerator();
     }
     
     /**
@@ -26,72 +26,86 @@ public class CardinalityTestGenerator {
         }
         
         for (ElementInfo childInfo : childElements) {
-            String childName = childInfo.name;
-            int minOccurs = childInfo.minOccurs;
-            int maxOccurs = childInfo.maxOccurs;
-            boolean isReference = childInfo.isReference;
-            
-            // Extract local name if it's a qualified name with prefix
-            String localChildName = childName;
-            String prefix = "";
-            if (childName.contains(":")) {
-                String[] parts = childName.split(":");
-                prefix = parts[0];
-                localChildName = parts[1];
-            }
-            
-            // Test file base name
-            String baseFileName = elementName + "_" + localChildName;
-            
-            // Generate positive tests
-            
-            // Min occurs test
-            if (minOccurs > 0) {
-                String testCase = "min";
-                String fileName = "test-output/positive/cardinality/" + baseFileName + "_" + testCase + ".xml";
-                String xml = xmlGenerator.generateTestXml(elementName, childElements, childName, minOccurs, isReference, targetNamespace, element);
-                generator.writeTestFile(fileName, xml);
-                generator.validateAgainstSchema(fileName, schemaFile, true);
-            }
-            
-            // Max occurs test (if not unbounded)
-            if (maxOccurs != Integer.MAX_VALUE) {
-                String testCase = "max";
-                String fileName = "test-output/positive/cardinality/" + baseFileName + "_" + testCase + ".xml";
-                String xml = xmlGenerator.generateTestXml(elementName, childElements, childName, maxOccurs, isReference, targetNamespace, element);
-                generator.writeTestFile(fileName, xml);
-                generator.validateAgainstSchema(fileName, schemaFile, true);
-            }
-            
-            // Between min and max (if different)
-            if (minOccurs < maxOccurs && maxOccurs != Integer.MAX_VALUE && maxOccurs - minOccurs > 1) {
-                int middle = minOccurs + (maxOccurs - minOccurs) / 2;
-                String testCase = "between";
-                String fileName = "test-output/positive/cardinality/" + baseFileName + "_" + testCase + ".xml";
-                String xml = xmlGenerator.generateTestXml(elementName, childElements, childName, middle, isReference, targetNamespace, element);
-                generator.writeTestFile(fileName, xml);
-                generator.validateAgainstSchema(fileName, schemaFile, true);
-            }
-            
-            // Generate negative tests
-            
-            // Less than min occurs (if min > 0)
-            if (minOccurs > 0) {
-                String testCase = "lessThanMin";
-                String fileName = "test-output/negative/cardinality/" + baseFileName + "_" + testCase + ".xml";
-                String xml = xmlGenerator.generateTestXml(elementName, childElements, childName, minOccurs - 1, isReference, targetNamespace, element);
-                generator.writeTestFile(fileName, xml);
-                generator.validateAgainstSchema(fileName, schemaFile, false);
-            }
-            
-            // More than max occurs (if not unbounded)
-            if (maxOccurs != Integer.MAX_VALUE) {
-                String testCase = "moreThanMax";
-                String fileName = "test-output/negative/cardinality/" + baseFileName + "_" + testCase + ".xml";
-                String xml = xmlGenerator.generateTestXml(elementName, childElements, childName, maxOccurs + 1, isReference, targetNamespace, element);
-                generator.writeTestFile(fileName, xml);
-                generator.validateAgainstSchema(fileName, schemaFile, false);
-            }
+            generateChildCardinalityTests(elementName, element, childElements, childInfo, targetNamespace, schemaFile);
+        }
+    }
+    
+    /**
+     * Generate tests for the cardinality constraint of a single child element
+     */
+    public void generateChildCardinalityTests(String elementName, Element element, List<ElementInfo> childElements,
+                                              ElementInfo childInfo, String targetNamespace, String schemaFile) throws Exception {
+        String childName = childInfo.name;
+        int minOccurs = childInfo.minOccurs;
+        int maxOccurs = childInfo.maxOccurs;
+        boolean isReference = childInfo.isReference;
+        
+        // Extract local name if it's a qualified name with prefix
+        String localChildName = childName;
+        String prefix = "";
+        if (childName.contains(":")) {
+            String[] parts = childName.split(":");
+            prefix = parts[0];
+            localChildName = parts[1];
+        }
+        
+        // Test file base name
+        String baseFileName = elementName + "_" + localChildName;
+        
+        // Generate positive tests
+        
+        // Min occurs test
+        if (minOccurs > 0) {
+            String testCase = "min";
+            String fileName = "test-output/positive/cardinality/" + baseFileName + "_" + testCase + ".xml";
+            emitTestCase(fileName, elementName, childElements, childName, minOccurs, isReference, targetNamespace, element, schemaFile, true);
+        }
+        
+        // Max occurs test (if not unbounded)
+        if (maxOccurs != Integer.MAX_VALUE) {
+            String testCase = "max";
+            String fileName = "test-output/positive/cardinality/" + baseFileName + "_" + testCase + ".xml";
+            emitTestCase(fileName, elementName, childElements, childName, maxOccurs, isReference, targetNamespace, element, schemaFile, true);
+        }
+        
+        // Between min and max (if different)
+        if (minOccurs < maxOccurs && maxOccurs != Integer.MAX_VALUE && maxOccurs - minOccurs > 1) {
+            int middle = minOccurs + (maxOccurs - minOccurs) / 2;
+            String testCase = "between";
+            String fileName = "test-output/positive/cardinality/" + baseFileName + "_" + testCase + ".xml";
+            emitTestCase(fileName, elementName, childElements, childName, middle, isReference, targetNamespace, element, schemaFile, true);
+        }
+        
+        // Generate negative tests
+        
+        // Less than min occurs (if min > 0)
+        if (minOccurs > 0) {
+            String testCase = "lessThanMin";
+            String fileName = "test-output/negative/cardinality/" + baseFileName + "_" + testCase + ".xml";
+            emitTestCase(fileName, elementName, childElements, childName, minOccurs - 1, isReference, targetNamespace, element, schemaFile, false);
+        }
+        
+        // More than max occurs (if not unbounded)
+        if (maxOccurs != Integer.MAX_VALUE) {
+            String testCase = "moreThanMax";
+            String fileName = "test-output/negative/cardinality/" + baseFileName + "_" + testCase + ".xml";
+            emitTestCase(fileName, elementName, childElements, childName, maxOccurs + 1, isReference, targetNamespace, element, schemaFile, false);
+        }
+    }    
+    /**
+     * Generate one cardinality test document, streaming it to disk when streaming output is enabled,
+     * together with the constraint it tests
+     */
+    private void emitTestCase(String fileName, String elementName, List<ElementInfo> childElements, String childName,
+                              int occurrences, boolean isReference, String targetNamespace, Element element,
+                              String schemaFile, boolean expectValid) throws Exception {
+        ExpectedOutcome outcome = ExpectedOutcome.cardinality(elementName, childName);
+        if (generator.isStreamOutput()) {
+            generator.processTestCase(fileName, out -> xmlGenerator.writeTestXml(out, elementName, childElements, childName,
+                                      occurrences, isReference, targetNamespace, element), schemaFile, expectValid, outcome);
+        } else {
+            String xml = xmlGenerator.generateTestXml(elementName, childElements, childName, occurrences, isReference, targetNamespace, element);
+            generator.processTestCase(fileName, xml, schemaFile, expectValid, outcome);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+import java.io.*;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Single-pass streaming reader that loads a schema file as a compact DOM.
+ * The result keeps the xs:schema element with its attributes and namespace declarations,
+ * and every top-level component with its full content. Annotations, comments, processing
+ * instructions and whitespace-only text are dropped while reading.
+ * This is still a DOM, not an index: memory grows with the declarations, at the usual DOM
+ * cost per node, and only documentation and formatting are saved. The indexes of global
+ * elements, types and groups are built over this DOM by SchemaParser.
+ */
+public final class CompactDomLoader {
+
+    // XMLInputFactory instances are not guaranteed to be thread-safe
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    });
+
+    private CompactDomLoader() {
+    }
+
+    /**
+     * Read a schema file into a compact document
+     */
+    public static Document load(File file) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(file.toURI().toString(), in);
+            try {
+                Document doc = DocumentBuilderPool.newDocument();
+                doc.setDocumentURI(file.toURI().toString());
+                read(reader, doc);
+                return doc;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static void read(XMLStreamReader reader, Document doc) throws XMLStreamException {
+        Node current = doc;
+        // Depth inside an xs:annotation that is being skipped, 0 when not skipping
+        int skipDepth = 0;
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (skipDepth > 0) {
+                        skipDepth++;
+                    } else if (XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(reader.getNamespaceURI())
+                               && "annotation".equals(reader.getLocalName())) {
+                        skipDepth = 1;
+                    } else {
+                        Element element = createElement(reader, doc);
+                        current.appendChild(element);
+                        current = element;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (skipDepth > 0) {
+                        skipDepth--;
+                    } else {
+                        current = current.getParentNode();
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (skipDepth == 0 && current != doc && !reader.getText().trim().isEmpty()) {
+                        current.appendChild(doc.createTextNode(reader.getText()));
+                    }
+                    break;
+                default:
+                    // Comments, processing instructions, DTD and ignorable whitespace are not needed
+                    break;
+            }
+        }
+    }
+
+    private static Element createElement(XMLStreamReader reader, Document doc) {
+        Element element = doc.createElementNS(emptyToNull(reader.getNamespaceURI()),
+                                              qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String name = prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix;
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)),
+                                   qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                                   reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.*;
+import org.w3c.dom.Element;
+
+/**
+ * Resolved content model of one element declaration: its compiled particle tree, its child
+ * elements with their effective occurrence ranges and the attributes it allows.
+ * Built once per declaration by SchemaParser.getContentModel and never modified afterwards.
+ */
+public final class ContentModel {
+
+    static final ContentModel EMPTY = new ContentModel(null, Collections.emptyList(), Collections.emptyList());
+
+    private final Particle particle;
+    private final List<ElementInfo> children;
+    private final List<Element> attributes;
+
+    ContentModel(Particle particle, List<ElementInfo> children, List<Element> attributes) {
+        this.particle = particle;
+        this.children = Collections.unmodifiableList(children);
+        this.attributes = Collections.unmodifiableList(attributes);
+    }
+
+    /**
+     * Root particle of the content, or null if the declaration has no element content
+     */
+    public Particle getParticle() {
+        return particle;
+    }
+
+    /**
+     * Child elements from all groups of the content, as returned by SchemaParser.findChildElements
+     */
+    public List<ElementInfo> getChildren() {
+        return children;
+    }
+
+    /**
+     * True if the declaration has child elements (complex content)
+     */
+    public boolean hasChildren() {
+        return !children.isEmpty();
+    }
+
+    /**
+     * xs:attribute declarations to generate values for
+     */
+    public List<Element> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Declaration whose name or ref matches the given child name, the first in document order, or null
+     */
+    public Element getDeclaration(String childName) {
+        Particle element = particle != null ? particle.findElement(childName) : null;
+        return element != null ? element.element.declaration : null;
+    }
+}
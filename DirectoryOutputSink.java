@@ -0,0 +1,25 @@
+import java.io.*;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Output sink that writes every test case to its own file on disk
+ */
+public class DirectoryOutputSink implements OutputSink {
+
+    @Override
+    public void write(String fileName, TestCaseRenderer renderer) throws Exception {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName), 64 * 1024)) {
+            renderer.render(out);
+        }
+    }
+
+    @Override
+    public Source read(String fileName) {
+        return new StreamSource(new File(fileName));
+    }
+
+    @Override
+    public void close() {
+    }
+}
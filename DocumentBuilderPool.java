@@ -0,0 +1,42 @@
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+
+/**
+ * Per-thread pool of namespace-aware DocumentBuilders.
+ * The factory is looked up once; every thread creates its own builder on first use.
+ * Builders only create the empty documents CompactDomLoader fills: schemas are read with
+ * StAX and generated instances are validated from streams, so nothing is parsed into a DOM.
+ */
+public final class DocumentBuilderPool {
+
+    private static final DocumentBuilderFactory FACTORY = createFactory();
+
+    // DocumentBuilder instances are not thread-safe
+    private static final ThreadLocal<DocumentBuilder> BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            synchronized (FACTORY) {
+                return FACTORY.newDocumentBuilder();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Could not create DocumentBuilder: " + e.getMessage(), e);
+        }
+    });
+
+    private DocumentBuilderPool() {
+    }
+
+    /**
+     * A new empty document from the calling thread's builder
+     */
+    public static Document newDocument() {
+        return BUILDER.get().newDocument();
+    }
+
+    private static DocumentBuilderFactory createFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.*;
+
+/**
+ * Micro-benchmark comparing the element info index behind SchemaModel.findElementInfo with
+ * a linear scan over all global element child lists. One operation is 1,000 lookups.
+ * Forks, warmup and measured iterations are run by BenchmarkHarness.
+ *
+ * Usage: java ElementIndexBenchmark [harness options] [global-elements...]  (each with 10 child declarations)
+ */
+public class ElementIndexBenchmark {
+
+    private static final int CHILDREN_PER_ELEMENT = 10;
+    private static final int LOOKUPS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkHarness.run(ElementIndexBenchmark.class, args, ElementIndexBenchmark::runSuite);
+    }
+
+    private static void runSuite(BenchmarkHarness harness, String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[]{100, 500, 1_000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        for (int size : sizes) {
+            SchemaModel model = buildModel(size);
+            String[] names = lookupNames(size);
+            int declarations = size * CHILDREN_PER_ELEMENT;
+            harness.bench("scan x" + LOOKUPS + " (" + declarations + " declarations)", () -> scan(model, names, LOOKUPS));
+            harness.bench("index x" + LOOKUPS + " (" + declarations + " declarations)", () -> index(model, names, LOOKUPS));
+        }
+    }
+
+    /**
+     * Build a model with the given number of global elements, each with its own children
+     */
+    private static SchemaModel buildModel(int globalElements) {
+        Map<String, List<ElementInfo>> elements = new LinkedHashMap<>();
+        for (int e = 0; e < globalElements; e++) {
+            List<ElementInfo> children = new ArrayList<>();
+            for (int c = 0; c < CHILDREN_PER_ELEMENT; c++) {
+                ElementInfo info = new ElementInfo();
+                info.name = "element" + e + "_child" + c;
+                info.minOccurs = 1;
+                info.maxOccurs = 1;
+                info.isSimpleType = true;
+                children.add(info);
+            }
+            elements.put("element" + e, children);
+        }
+        return new SchemaModel(Collections.emptyMap(), elements, Collections.emptyMap(),
+                               Collections.emptyMap(), Collections.emptyMap(), null);
+    }
+
+    private static String[] lookupNames(int globalElements) {
+        Random random = new Random(42);
+        String[] names = new String[1024];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "element" + random.nextInt(globalElements) + "_child" + random.nextInt(CHILDREN_PER_ELEMENT);
+        }
+        return names;
+    }
+
+    // The lookup findElementInfo performed before the index existed
+    private static int scan(SchemaModel model, String[] names, int lookups) {
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            String name = names[i % names.length];
+            ElementInfo info = null;
+            for (List<ElementInfo> childList : model.getGlobalElements().values()) {
+                for (ElementInfo e : childList) {
+                    if (e.name.equals(name)) {
+                        info = e;
+                        break;
+                    }
+                }
+                if (info != null) break;
+            }
+            if (info != null) found++;
+        }
+        return found;
+    }
+
+    private static int index(SchemaModel model, String[] names, int lookups) {
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            if (model.findElementInfo(names[i % names.length]) != null) found++;
+        }
+        return found;
+    }
+}
@@ -1,3 +1,5 @@
+import org.w3c.dom.Element;
+
 /**
  * Helper class to store element information
  */
@@ -7,4 +9,5 @@ public class ElementInfo {
     int minOccurs;
     int maxOccurs;
     boolean isSimpleType; // true if the element is a simple type (can have text content)
+    Element declaration; // the xs:element node this info was parsed from
 }
\ No newline at end of file
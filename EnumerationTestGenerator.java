@@ -1,4 +1,6 @@
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import javax.xml.XMLConstants;
@@ -10,14 +12,17 @@ import java.util.Map;
  */
 public class EnumerationTestGenerator {
     
+    // Fixed so that repeated and parallel runs produce identical negative cases
+    private static final String INVALID_VALUE = "INVALID_VALUE";
+    
     private XMLSchemaTestGenerator generator;
     private TestXmlGenerator xmlGenerator;
     private SchemaParser schemaParser;
     
-    public EnumerationTestGenerator(XMLSchemaTestGenerator generator) {
+    public EnumerationTestGenerator(XMLSchemaTestGenerator generator, SchemaContext context) {
         this.generator = generator;
-        this.schemaParser = new SchemaParser(generator);
-        this.xmlGenerator = new TestXmlGenerator(generator, this.schemaParser);
+        this.schemaParser = context.getParser();
+        this.xmlGenerator = context.getXmlGenerator();
     }
     
     /**
@@ -25,6 +30,15 @@ public class EnumerationTestGenerator {
      */
     public void generateEnumerationTests(String elementName, Element element, 
                                        String targetNamespace, String schemaFile) throws Exception {
+        generateEnumerationTests(elementName, element, targetNamespace, schemaFile, new HashSet<>());
+    }
+    
+    // Global elements being processed further up are skipped, so recursive references terminate
+    private void generateEnumerationTests(String elementName, Element element, String targetNamespace,
+                                          String schemaFile, Set<String> processing) throws Exception {
+        if (!processing.add(elementName)) {
+            return;
+        }
         // Process element's direct type enumerations
         List<String> elementEnums = schemaParser.findEnumerationValues(element);
         if (!elementEnums.isEmpty()) {
@@ -106,11 +120,12 @@ public class EnumerationTestGenerator {
                     // Recursively process this element's enumerations if it's a global element
                     if (generator.getGlobalElementDefinitions().containsKey(localChildName)) {
                         generateEnumerationTests(localChildName, generator.getGlobalElementDefinitions().get(localChildName), 
-                                              targetNamespace, schemaFile);
+                                              targetNamespace, schemaFile, processing);
                     }
                 }
             }
         }
+        processing.remove(elementName);
     }
     
     /**
@@ -123,16 +138,14 @@ public class EnumerationTestGenerator {
             String safeValue = value.replaceAll("[^a-zA-Z0-9]", "_");
             String fileName = "test-output/positive/enumeration/" + elementName + "_enum_" + safeValue + ".xml";
             String xml = xmlGenerator.generateXmlWithValue(elementName, value, targetNamespace);
-            generator.writeTestFile(fileName, xml);
-            generator.validateAgainstSchema(fileName, schemaFile, true);
+            generator.processTestCase(fileName, xml, schemaFile, true, ExpectedOutcome.enumeration(elementName));
         }
         
         // Generate negative test with invalid value
         String fileName = "test-output/negative/enumeration/" + elementName + "_enum_invalid.xml";
-        String invalidValue = "INVALID_" + System.currentTimeMillis();
+        String invalidValue = INVALID_VALUE;
         String xml = xmlGenerator.generateXmlWithValue(elementName, invalidValue, targetNamespace);
-        generator.writeTestFile(fileName, xml);
-        generator.validateAgainstSchema(fileName, schemaFile, false);
+        generator.processTestCase(fileName, xml, schemaFile, false, ExpectedOutcome.enumeration(elementName));
     }
     
     /**
@@ -147,21 +160,20 @@ public class EnumerationTestGenerator {
             localChildName = childName.substring(childName.indexOf(":") + 1);
         }
         
+        String constraint = parentName + "/" + localChildName;
         // Generate positive tests - one for each value
         for (String value : enumValues) {
             String safeValue = value.replaceAll("[^a-zA-Z0-9]", "_");
             String fileName = "test-output/positive/enumeration/" + parentName + "_" + localChildName + "_" + safeValue + ".xml";
             String xml = xmlGenerator.generateParentXmlWithChildValue(parentName, childName, isReference, value, targetNamespace);
-            generator.writeTestFile(fileName, xml);
-            generator.validateAgainstSchema(fileName, schemaFile, true);
+            generator.processTestCase(fileName, xml, schemaFile, true, ExpectedOutcome.enumeration(constraint));
         }
         
         // Generate negative test with invalid value
         String fileName = "test-output/negative/enumeration/" + parentName + "_" + localChildName + "_invalid.xml";
-        String invalidValue = "INVALID_" + System.currentTimeMillis();
+        String invalidValue = INVALID_VALUE;
         String xml = xmlGenerator.generateParentXmlWithChildValue(parentName, childName, isReference, invalidValue, targetNamespace);
-        generator.writeTestFile(fileName, xml);
-        generator.validateAgainstSchema(fileName, schemaFile, false);
+        generator.processTestCase(fileName, xml, schemaFile, false, ExpectedOutcome.enumeration(constraint));
     }
     
     /**
@@ -181,6 +193,7 @@ public class EnumerationTestGenerator {
             return;
         }
         
+        String constraint = parentName + "/" + localChildName + "/@" + attrName;
         // Generate positive tests - one for each value
         for (String value : enumValues) {
             String safeValue = value.replaceAll("[^a-zA-Z0-9]", "_");
@@ -227,16 +240,14 @@ public class EnumerationTestGenerator {
             } else {
                 xml = xmlGenerator.generateParentXmlWithChildAttribute(parentName, childName, isReference, attrName, value, targetNamespace);
             }
-            generator.writeTestFile(fileName, xml);
-            generator.validateAgainstSchema(fileName, schemaFile, true);
+            generator.processTestCase(fileName, xml, schemaFile, true, ExpectedOutcome.enumeration(constraint));
         }
         
         // Generate negative test with invalid value
         String fileName = "test-output/negative/enumeration/" + parentName + "_" + localChildName + "_" + attrName + "_invalid.xml";
-        String invalidValue = "INVALID_" + System.currentTimeMillis();
+        String invalidValue = INVALID_VALUE;
         String xml = xmlGenerator.generateParentXmlWithChildAttribute(parentName, childName, isReference, attrName, invalidValue, targetNamespace);
-        generator.writeTestFile(fileName, xml);
-        generator.validateAgainstSchema(fileName, schemaFile, false);
+        generator.processTestCase(fileName, xml, schemaFile, false, ExpectedOutcome.enumeration(constraint));
     }
     
     /**
@@ -249,20 +260,19 @@ public class EnumerationTestGenerator {
             // These are container elements, not the actual elements that should have the attribute
             return;
         }
+        String constraint = elementName + "/@" + attrName;
         // Generate positive tests - one for each value
         for (String value : enumValues) {
             String safeValue = value.replaceAll("[^a-zA-Z0-9]", "_");
             String fileName = "test-output/positive/enumeration/" + elementName + "_" + attrName + "_" + safeValue + ".xml";
             String xml = xmlGenerator.generateXmlWithAttributeValue(elementName, attrName, value, targetNamespace);
-            generator.writeTestFile(fileName, xml);
-            generator.validateAgainstSchema(fileName, schemaFile, true);
+            generator.processTestCase(fileName, xml, schemaFile, true, ExpectedOutcome.enumeration(constraint));
         }
         
         // Generate negative test with invalid value
         String fileName = "test-output/negative/enumeration/" + elementName + "_" + attrName + "_invalid.xml";
-        String invalidValue = "INVALID_" + System.currentTimeMillis();
+        String invalidValue = INVALID_VALUE;
         String xml = xmlGenerator.generateXmlWithAttributeValue(elementName, attrName, invalidValue, targetNamespace);
-        generator.writeTestFile(fileName, xml);
-        generator.validateAgainstSchema(fileName, schemaFile, false);
+        generator.processTestCase(fileName, xml, schemaFile, false, ExpectedOutcome.enumeration(constraint));
     }
 }
\ No newline at end of file
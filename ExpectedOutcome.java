@@ -0,0 +1,66 @@
+import java.util.*;
+
+/**
+ * The constraint a generated test case is meant to test.
+ * Whether the case meets it is worked out from the rendered document by InstanceChecker:
+ * in fast mode a case is confirmed without running the schema validator only when that
+ * check proves what the case expects, a positive case valid and a negative case invalid.
+ */
+public final class ExpectedOutcome {
+
+    // Constraint the case is generated for, keyed like InstanceChecker violations
+    private final String intended;
+
+    private ExpectedOutcome(String intended) {
+        this.intended = intended;
+    }
+
+    /**
+     * A cardinality case for the occurrences of the target child in its parent
+     */
+    public static ExpectedOutcome cardinality(String parentName, String targetChild) {
+        return new ExpectedOutcome(localName(parentName) + "/" + localName(targetChild));
+    }
+
+    /**
+     * An enumeration case for the value of the named element or attribute
+     */
+    public static ExpectedOutcome enumeration(String constraint) {
+        return new ExpectedOutcome(constraint);
+    }
+
+    public String getIntended() {
+        return intended;
+    }
+
+    /**
+     * True if the check of the rendered document proves the expected outcome
+     */
+    public boolean isProvenBy(InstanceChecker.Result result, boolean expectValid) {
+        return expectValid ? result.isProvenValid() : result.isProvenInvalid();
+    }
+
+    /**
+     * For a negative case proven invalid, a description of how it misses the intended
+     * constraint or breaks others besides it; null if it breaks exactly that one
+     */
+    public String check(InstanceChecker.Result result) {
+        Map<String, String> violations = result.getViolations();
+        if (violations.isEmpty()) {
+            return null;
+        }
+        if (!violations.containsKey(intended)) {
+            return "does not break " + intended + " but " + String.join("; ", violations.values());
+        }
+        if (violations.size() > 1) {
+            List<String> others = new ArrayList<>(violations.keySet());
+            others.remove(intended);
+            return "breaks " + String.join(", ", others) + " besides " + intended;
+        }
+        return null;
+    }
+
+    private static String localName(String name) {
+        return name.contains(":") ? name.substring(name.indexOf(':') + 1) : name;
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * A rendered test document together with the validation outcome it is expected to have
+ */
+public class GeneratedCase {
+    final String id; // output path of the case, e.g. test-output/positive/cardinality/cars_car_min.xml
+    final String content;
+    final boolean expectValid;
+
+    public GeneratedCase(String id, String content, boolean expectValid) {
+        this.id = id;
+        this.content = content;
+        this.expectValid = expectValid;
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manifest of a previous generation run used for incremental regeneration.
+ * Records a fingerprint for every global element and the test files its processing produced,
+ * so later runs only regenerate elements whose fingerprint changed and can delete the
+ * outputs of elements that no longer exist. The options that change generated output are
+ * recorded too; when they differ from the previous run, every element is regenerated.
+ */
+public class GenerationManifest {
+
+    private static final String HEADER = "# XML Schema Test Generator manifest";
+
+    private final Map<String, String> settings;
+    private boolean settingsChanged;
+    private final Map<String, String> previousFingerprints = new HashMap<>();
+    private final Map<String, Set<String>> previousOutputs = new HashMap<>();
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> outputs = new ConcurrentHashMap<>();
+    // Global element whose tests the current thread is generating
+    private final ThreadLocal<String> currentElement = new ThreadLocal<>();
+
+    private GenerationManifest(Map<String, String> settings) {
+        this.settings = new TreeMap<>(settings);
+    }
+
+    /**
+     * Load the manifest of the previous run, or start an empty one if there is none.
+     * The settings are the options this run generates output with.
+     */
+    public static GenerationManifest load(File file, Map<String, String> settings) throws IOException {
+        GenerationManifest manifest = new GenerationManifest(settings);
+        if (!file.exists()) {
+            return manifest;
+        }
+        Map<String, String> previousSettings = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t", 3);
+                if (parts.length < 3) {
+                    continue;
+                }
+                if ("setting".equals(parts[0])) {
+                    previousSettings.put(parts[1], parts[2]);
+                } else if ("element".equals(parts[0])) {
+                    manifest.previousFingerprints.put(parts[1], parts[2]);
+                } else if ("output".equals(parts[0])) {
+                    manifest.previousOutputs.computeIfAbsent(parts[1], k -> new TreeSet<>()).add(parts[2]);
+                }
+            }
+        }
+        // Outputs of the previous run stay known, so the ones no longer produced are still removed
+        if (!previousSettings.equals(manifest.settings)) {
+            manifest.settingsChanged = true;
+            manifest.previousFingerprints.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * True if the previous run generated its output with other settings, so no element is up to date
+     */
+    public boolean isSettingsChanged() {
+        return settingsChanged;
+    }
+
+    /**
+     * Check whether an element is unchanged since the previous run and all of its outputs still exist.
+     * Unchanged elements keep their recorded outputs in this run's manifest.
+     */
+    public boolean isUpToDate(String elementName, String fingerprint) {
+        fingerprints.put(elementName, fingerprint);
+        if (!fingerprint.equals(previousFingerprints.get(elementName))) {
+            return false;
+        }
+        Set<String> files = previousOutputs.getOrDefault(elementName, Collections.emptySet());
+        for (String file : files) {
+            if (!new File(file).exists()) {
+                return false;
+            }
+        }
+        outputs.put(elementName, ConcurrentHashMap.newKeySet());
+        outputs.get(elementName).addAll(files);
+        return true;
+    }
+
+    /**
+     * Attribute test files recorded on this thread to the given global element until exitElement
+     */
+    public void enterElement(String elementName) {
+        currentElement.set(elementName);
+        outputs.computeIfAbsent(elementName, k -> ConcurrentHashMap.newKeySet());
+    }
+
+    public void exitElement() {
+        currentElement.remove();
+    }
+
+    /**
+     * Record a test file produced for the element the current thread is processing
+     */
+    public void recordOutput(String fileName) {
+        String elementName = currentElement.get();
+        if (elementName != null) {
+            outputs.computeIfAbsent(elementName, k -> ConcurrentHashMap.newKeySet()).add(fileName);
+        }
+    }
+
+    /**
+     * Files recorded by the previous run that no element produces any more
+     */
+    public Set<String> getStaleOutputs() {
+        Set<String> live = new HashSet<>();
+        for (Set<String> files : outputs.values()) {
+            live.addAll(files);
+        }
+        Set<String> stale = new TreeSet<>();
+        for (Set<String> files : previousOutputs.values()) {
+            for (String file : files) {
+                if (!live.contains(file)) {
+                    stale.add(file);
+                }
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Save this run's fingerprints and outputs, sorted so the manifest is stable between runs
+     */
+    public void save(File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(HEADER + "\n");
+            for (Map.Entry<String, String> entry : settings.entrySet()) {
+                writer.write("setting\t" + entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            for (Map.Entry<String, String> entry : new TreeMap<>(fingerprints).entrySet()) {
+                writer.write("element\t" + entry.getKey() + "\t" + entry.getValue() + "\n");
+                for (String output : new TreeSet<>(outputs.getOrDefault(entry.getKey(), Collections.emptySet()))) {
+                    writer.write("output\t" + entry.getKey() + "\t" + output + "\n");
+                }
+            }
+        }
+    }
+}
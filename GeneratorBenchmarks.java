@@ -0,0 +1,110 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import org.w3c.dom.Element;
+
+/**
+ * Benchmark suite for the generator's hot paths.
+ * Covers schema loading and indexing (loadSchema), child resolution (findChildElements),
+ * cardinality document rendering (generateTestXml) and instance rendering
+ * (addCompleteElementInstance) at several occurrence counts, and validation
+ * (validateAgainstSchema). Runs on synthetic schemas of increasing size and depth and, when
+ * present in the working directory, on the bundled vehicles.xsd.
+ * Child resolution and the cold instance benchmark build a fresh parser per operation, so
+ * they measure content model compilation rather than its caches; the other benchmarks use
+ * the run's SchemaContext, as generation does.
+ * Forks, warmup and measured iterations are run by BenchmarkHarness.
+ *
+ * Usage: java GeneratorBenchmarks [harness options] [elements:depth ...]  (default 50:2 200:3 1000:4)
+ */
+public class GeneratorBenchmarks {
+
+    private static final int[] OCCURRENCES = {1, 100, 10_000};
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkHarness.run(GeneratorBenchmarks.class, args, GeneratorBenchmarks::runSuites);
+    }
+
+    private static void runSuites(BenchmarkHarness harness, String[] args) throws Exception {
+        // Validation outcomes are not what is being measured here
+        Log.setLevel(Log.Level.ERROR);
+        String[] sizes = args.length > 0 ? args : new String[]{"50:2", "200:3", "1000:4"};
+
+        File workDir = Files.createTempDirectory("xsd-bench").toFile();
+        if (new File("vehicles.xsd").isFile()) {
+            runSuite(harness, "vehicles.xsd", "vehicles", "vehicles", workDir);
+        }
+        for (String size : sizes) {
+            String[] parts = size.split(":");
+            int elements = Integer.parseInt(parts[0]);
+            int depth = parts.length > 1 ? Integer.parseInt(parts[1]) : 2;
+            File schema = new SyntheticSchemaGenerator(elements, depth).write(workDir);
+            runSuite(harness, schema.getPath(), "synthetic " + size, "element0", workDir);
+        }
+
+        for (File file : workDir.listFiles()) {
+            file.delete();
+        }
+        workDir.delete();
+    }
+
+    /**
+     * Run all benchmarks against one schema; target is a global element with child elements
+     */
+    private static void runSuite(BenchmarkHarness harness, String schemaFile, String label, String target,
+                                 File workDir) throws Exception {
+        XMLSchemaTestGenerator generator = new XMLSchemaTestGenerator();
+        generator.setWriteFiles(false);
+        String namespace = generator.loadSchema(schemaFile);
+
+        // Reading every schema of the bundle and building the model, as a run does before generating
+        harness.bench(label + " loadSchema", () -> {
+            XMLSchemaTestGenerator fresh = new XMLSchemaTestGenerator();
+            fresh.setWriteFiles(false);
+            fresh.loadSchema(schemaFile);
+            return fresh.getSchemaModel();
+        });
+
+        Element declaration = generator.getGlobalElementDefinitions().get(target);
+        harness.bench(label + " findChildElements(" + target + ")", () -> new SchemaParser(generator).findChildElements(declaration));
+
+        SchemaContext context = generator.getSchemaContext();
+        SchemaParser parser = context.getParser();
+        List<ElementInfo> children = generator.getGlobalElementsMap().get(target);
+        ElementInfo repeated = children.get(children.size() - 1);
+        TestXmlGenerator xmlGenerator = context.getXmlGenerator();
+        for (int occurrences : OCCURRENCES) {
+            harness.bench(label + " generateTestXml x" + occurrences, () -> xmlGenerator.generateTestXml(
+                target, children, repeated.name, occurrences, repeated.isReference, namespace, declaration));
+        }
+
+        Element repeatedDeclaration = parser.getContentModel(declaration).getDeclaration(repeated.name);
+        for (int occurrences : OCCURRENCES) {
+            harness.bench(label + " addCompleteElementInstance x" + occurrences, () -> {
+                StringWriter buffer = new StringWriter();
+                InstanceWriter out = new InstanceWriter(buffer);
+                xmlGenerator.addCompleteElementInstance(out, repeated.name, repeated.isReference, occurrences, namespace, repeatedDeclaration);
+                out.flush();
+                return buffer;
+            });
+        }
+        harness.bench(label + " addCompleteElementInstance x1 (cold)", () -> {
+            StringWriter buffer = new StringWriter();
+            InstanceWriter out = new InstanceWriter(buffer);
+            new TestXmlGenerator(generator, new SchemaParser(generator)).addCompleteElementInstance(
+                out, repeated.name, repeated.isReference, 1, namespace, repeatedDeclaration);
+            out.flush();
+            return buffer;
+        });
+
+        File instance = new File(workDir, "instance.xml");
+        String xml = xmlGenerator.generateTestXml(target, children, repeated.name, Math.max(repeated.minOccurs, 1),
+                                                  repeated.isReference, namespace, declaration);
+        Files.write(instance.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        harness.bench(label + " validateAgainstSchema", () -> {
+            generator.validateAgainstSchema(instance.getPath(), schemaFile, true);
+            return instance;
+        });
+    }
+}
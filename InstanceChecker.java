@@ -0,0 +1,819 @@
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Checks a rendered test document against the schema model, for fast mode.
+ * Reads the document once with StAX, resolves the declaration of every element from the
+ * document itself, matches the children of each element against its compiled particle tree
+ * and checks simple values against built-in types and enumerations. Only what it can decide
+ * for certain counts: a broken constraint is recorded as a violation, and anything it cannot
+ * decide leaves the result undecided, so the case is validated. Schema constructs are
+ * checked against a list of those the model covers (named local attributes, sequences,
+ * choices, all groups, group references and complex content extensions); any other, such as
+ * attribute references, attribute groups, wildcards, substitution groups or identity
+ * constraints, leaves every element using it undecided. Content matching is greedy, which is exact for schemas obeying the Unique Particle
+ * Attribution rule.
+ */
+public class InstanceChecker {
+
+    private static final Set<String> STRING_TYPES = new HashSet<>(Arrays.asList("string", "normalizedString", "token"));
+    private static final Set<String> BOOLEAN_VALUES = new HashSet<>(Arrays.asList("true", "false", "1", "0"));
+    private static final Pattern INTEGER = Pattern.compile("[+-]?[0-9]+");
+    private static final Pattern DECIMAL = Pattern.compile("[+-]?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)");
+    // Value ranges of the built-in integer types; null bounds are open
+    private static final Map<String, BigInteger[]> INTEGER_RANGES = new HashMap<>();
+    // Schema components the checker models, with the attributes and children each may have;
+    // a component with anything else makes the elements using it unsupported
+    private static final Map<String, Set<String>> MODELLED_ATTRIBUTES = new HashMap<>();
+    private static final Map<String, Set<String>> MODELLED_CHILDREN = new HashMap<>();
+    static {
+        modelled("element", names("name", "type", "ref", "minOccurs", "maxOccurs", "form", "id", "nillable", "block", "final",
+                                  "substitutionGroup"),
+                 names("annotation", "simpleType", "complexType"));
+        modelled("complexType", names("name", "id", "mixed", "abstract", "block", "final"),
+                 names("annotation", "sequence", "choice", "all", "group", "attribute", "complexContent"));
+        modelled("complexContent", names("id", "mixed"), names("annotation", "extension"));
+        modelled("extension", names("id", "base"), names("annotation", "sequence", "choice", "all", "group", "attribute"));
+        modelled("sequence", names("id", "minOccurs", "maxOccurs"), names("annotation", "element", "sequence", "choice", "group"));
+        modelled("choice", names("id", "minOccurs", "maxOccurs"), names("annotation", "element", "sequence", "choice", "group"));
+        modelled("all", names("id", "minOccurs", "maxOccurs"), names("annotation", "element"));
+        modelled("group", names("id", "name", "ref", "minOccurs", "maxOccurs"), names("annotation", "sequence", "choice", "all"));
+        modelled("attribute", names("name", "type", "use", "default", "fixed", "form", "id"), names("annotation", "simpleType"));
+    }
+    static {
+        INTEGER_RANGES.put("integer", new BigInteger[]{null, null});
+        INTEGER_RANGES.put("nonPositiveInteger", new BigInteger[]{null, BigInteger.ZERO});
+        INTEGER_RANGES.put("negativeInteger", new BigInteger[]{null, BigInteger.ONE.negate()});
+        INTEGER_RANGES.put("nonNegativeInteger", new BigInteger[]{BigInteger.ZERO, null});
+        INTEGER_RANGES.put("positiveInteger", new BigInteger[]{BigInteger.ONE, null});
+        INTEGER_RANGES.put("long", range(-63, 63));
+        INTEGER_RANGES.put("int", range(-31, 31));
+        INTEGER_RANGES.put("short", range(-15, 15));
+        INTEGER_RANGES.put("byte", range(-7, 7));
+        INTEGER_RANGES.put("unsignedLong", range(0, 64));
+        INTEGER_RANGES.put("unsignedInt", range(0, 32));
+        INTEGER_RANGES.put("unsignedShort", range(0, 16));
+        INTEGER_RANGES.put("unsignedByte", range(0, 8));
+    }
+
+    private final XMLSchemaTestGenerator generator;
+    private final SchemaParser schemaParser;
+    private final InstanceExpansion expansion;
+    private final Map<Element, Rules> rules = new ConcurrentHashMap<>();
+    private volatile Boolean substitutionGroups;
+    private final ThreadLocal<XMLInputFactory> inputFactory = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    });
+
+    public InstanceChecker(XMLSchemaTestGenerator generator, SchemaParser schemaParser, InstanceExpansion expansion) {
+        this.generator = generator;
+        this.schemaParser = schemaParser;
+        this.expansion = expansion;
+    }
+
+    /**
+     * Outcome of checking one document: the constraints it breaks, keyed like
+     * ExpectedOutcome constraints, and the first thing that could not be decided
+     */
+    public static final class Result {
+        private final Map<String, String> violations = new LinkedHashMap<>();
+        private String undecided;
+
+        /**
+         * True if the document breaks no constraint and everything in it could be checked
+         */
+        public boolean isProvenValid() {
+            return violations.isEmpty() && undecided == null;
+        }
+
+        /**
+         * True if the document certainly breaks at least one constraint
+         */
+        public boolean isProvenInvalid() {
+            return !violations.isEmpty();
+        }
+
+        public Map<String, String> getViolations() {
+            return Collections.unmodifiableMap(violations);
+        }
+
+        /**
+         * Description of the first broken constraint, or null when none is broken
+         */
+        public String firstViolation() {
+            return violations.isEmpty() ? null : violations.values().iterator().next();
+        }
+
+        /**
+         * What could not be checked first, or null if the whole document was checked
+         */
+        public String getUndecided() {
+            return undecided;
+        }
+
+        void violation(String key, String description) {
+            violations.putIfAbsent(key, description);
+        }
+
+        void undecided(String reason) {
+            if (undecided == null) {
+                undecided = reason;
+            }
+        }
+    }
+
+    /**
+     * Check a rendered document; the caller closes any stream behind the source
+     */
+    public Result check(Source document) {
+        Result result = new Result();
+        if (usesSubstitutionGroups()) {
+            result.undecided("the schema uses substitution groups");
+            return result;
+        }
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.get().createXMLStreamReader(document);
+            Deque<Frame> open = new ArrayDeque<>();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        open.push(startElement(reader, open.peek(), result));
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (!open.isEmpty()) {
+                            open.peek().text.append(reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement(open.pop(), result);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (XMLStreamException | RuntimeException e) {
+            result.undecided("the document could not be read: " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing was left to read
+                }
+            }
+        }
+        return result;
+    }
+
+    // One open element of the document
+    private static final class Frame {
+        final QName name;
+        final String key;
+        final Rules rules; // null when the declaration is unknown
+        final List<QName> children = new ArrayList<>();
+        final StringBuilder text = new StringBuilder();
+
+        Frame(QName name, String key, Rules rules) {
+            this.name = name;
+            this.key = key;
+            this.rules = rules;
+        }
+    }
+
+    private Frame startElement(XMLStreamReader reader, Frame parent, Result result) {
+        QName name = new QName(reader.getNamespaceURI() != null ? reader.getNamespaceURI() : "", reader.getLocalName());
+        String key = parent != null ? parent.name.getLocalPart() + "/" + name.getLocalPart() : name.getLocalPart();
+        Element declaration = null;
+        if (parent == null) {
+            declaration = globalDeclaration(name);
+            if (declaration == null) {
+                result.undecided("no global declaration of " + name);
+            }
+        } else {
+            parent.children.add(name);
+            // Unknown parents were reported already, and children not allowed are reported with the parent's content
+            if (parent.rules != null && parent.rules.unsupported == null && parent.rules.children.containsKey(name)) {
+                declaration = parent.rules.children.get(name);
+                if (declaration == null) {
+                    result.undecided(key + " matches more than one declaration");
+                }
+            }
+        }
+
+        Rules elementRules = declaration != null ? rules.computeIfAbsent(declaration, this::buildRules) : null;
+        if (elementRules != null && elementRules.unsupported != null) {
+            result.undecided(elementRules.unsupported);
+        } else if (elementRules != null) {
+            checkAttributes(reader, key, elementRules, result);
+        }
+        return new Frame(name, key, elementRules);
+    }
+
+    private void checkAttributes(XMLStreamReader reader, String key, Rules elementRules, Result result) {
+        Set<String> present = new HashSet<>();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String namespace = reader.getAttributeNamespace(i);
+            String name = reader.getAttributeLocalName(i);
+            String attributeKey = key + "/@" + name;
+            if (namespace != null && !namespace.isEmpty()) {
+                result.undecided("qualified attribute " + attributeKey);
+                continue;
+            }
+            present.add(name);
+            Element declaration = elementRules.attributes.get(name);
+            if (declaration == null) {
+                result.violation(attributeKey, "attribute " + name + " is not declared for " + key);
+            } else if (declaration.hasAttribute("fixed") || "prohibited".equals(declaration.getAttribute("use"))) {
+                result.undecided("fixed or prohibited attribute " + attributeKey);
+            } else {
+                checkValue(simpleType(declaration, 0), reader.getAttributeValue(i), attributeKey, result);
+            }
+        }
+        for (String required : elementRules.requiredAttributes) {
+            if (!present.contains(required)) {
+                result.violation(key + "/@" + required, "required attribute " + required + " of " + key + " is missing");
+            }
+        }
+    }
+
+    private void endElement(Frame frame, Result result) {
+        Rules elementRules = frame.rules;
+        if (elementRules == null || elementRules.unsupported != null) {
+            return;
+        }
+        if (elementRules.text != null) {
+            if (!frame.children.isEmpty()) {
+                result.violation(frame.key, frame.key + " has a simple type but contains elements");
+            } else {
+                checkValue(elementRules.text, frame.text.toString(), frame.key, result);
+            }
+            return;
+        }
+        if (!frame.text.toString().trim().isEmpty()) {
+            result.violation(frame.key, frame.key + " has element-only content but contains text");
+        }
+        if (elementRules.particle == null) {
+            for (QName child : frame.children) {
+                result.violation(frame.name.getLocalPart() + "/" + child.getLocalPart(),
+                                 child.getLocalPart() + " is not allowed in " + frame.name.getLocalPart());
+            }
+            return;
+        }
+        if (match(elementRules, elementRules.particle, frame.children, 0) != frame.children.size()) {
+            reportMismatch(frame, result);
+        }
+    }
+
+    // Report which child occurrence counts are out of range when the children do not match the content model
+    private void reportMismatch(Frame frame, Result result) {
+        Rules elementRules = frame.rules;
+        String parent = frame.name.getLocalPart();
+        Map<QName, Integer> counts = new LinkedHashMap<>();
+        for (QName child : frame.children) {
+            counts.merge(child, 1, Integer::sum);
+        }
+        int reported = result.violations.size();
+        for (QName child : counts.keySet()) {
+            if (!elementRules.children.containsKey(child)) {
+                result.violation(parent + "/" + child.getLocalPart(), child.getLocalPart() + " is not allowed in " + parent);
+            }
+        }
+        for (QName child : new LinkedHashSet<>(elementRules.names.values())) {
+            int min = 0;
+            int max = 0;
+            for (Map.Entry<Particle, QName> entry : elementRules.names.entrySet()) {
+                if (entry.getValue().equals(child)) {
+                    min = Math.max(min, elementRules.particle.minOccurrences(entry.getKey()));
+                    long sum = (long) max + elementRules.particle.maxOccurrences(entry.getKey());
+                    max = sum >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+                }
+            }
+            int count = counts.getOrDefault(child, 0);
+            if (count < min || count > max) {
+                result.violation(parent + "/" + child.getLocalPart(), parent + "/" + child.getLocalPart() + " occurs " + count
+                                 + " times, allowed " + min + ".." + (max == Integer.MAX_VALUE ? "unbounded" : String.valueOf(max)));
+            }
+        }
+        if (result.violations.size() == reported) {
+            result.violation(frame.key, "the children of " + frame.key + " do not match its content model");
+        }
+    }
+
+    // Position after matching the particle greedily from pos, or -1 if the children do not fit
+    private int match(Rules elementRules, Particle particle, List<QName> names, int pos) {
+        Set<QName> first = elementRules.firsts.get(particle);
+        int repetitions = 0;
+        while (repetitions < particle.maxOccurs && pos < names.size() && first.contains(names.get(pos))) {
+            int next = matchOnce(elementRules, particle, names, pos);
+            if (next < 0) {
+                return -1;
+            }
+            if (next == pos) {
+                break;
+            }
+            pos = next;
+            repetitions++;
+        }
+        // Missing repetitions are fine if one repetition can be empty
+        return repetitions >= particle.minOccurs || isContentEmptiable(particle) ? pos : -1;
+    }
+
+    private int matchOnce(Rules elementRules, Particle particle, List<QName> names, int pos) {
+        switch (particle.kind) {
+            case ELEMENT:
+                return names.get(pos).equals(elementRules.names.get(particle)) ? pos + 1 : -1;
+            case SEQUENCE:
+                for (Particle child : particle.particles) {
+                    pos = match(elementRules, child, names, pos);
+                    if (pos < 0) {
+                        return -1;
+                    }
+                }
+                return pos;
+            case CHOICE:
+                for (Particle child : particle.particles) {
+                    if (elementRules.firsts.get(child).contains(names.get(pos))) {
+                        return match(elementRules, child, names, pos);
+                    }
+                }
+                return -1;
+            default:
+                Set<Particle> used = new HashSet<>();
+                while (pos < names.size()) {
+                    Particle next = null;
+                    for (Particle child : particle.particles) {
+                        if (!used.contains(child) && elementRules.firsts.get(child).contains(names.get(pos))) {
+                            next = child;
+                            break;
+                        }
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    pos = match(elementRules, next, names, pos);
+                    if (pos < 0) {
+                        return -1;
+                    }
+                    used.add(next);
+                }
+                for (Particle child : particle.particles) {
+                    if (!used.contains(child) && !isEmptiable(child)) {
+                        return -1;
+                    }
+                }
+                return pos;
+        }
+    }
+
+    private static boolean isEmptiable(Particle particle) {
+        return particle.minOccurs == 0 || isContentEmptiable(particle);
+    }
+
+    // True if one repetition of the particle can match no element at all
+    private static boolean isContentEmptiable(Particle particle) {
+        switch (particle.kind) {
+            case ELEMENT:
+                return false;
+            case CHOICE:
+                for (Particle child : particle.particles) {
+                    if (isEmptiable(child)) {
+                        return true;
+                    }
+                }
+                return particle.particles.isEmpty();
+            default:
+                for (Particle child : particle.particles) {
+                    if (!isEmptiable(child)) {
+                        return false;
+                    }
+                }
+                return true;
+        }
+    }
+
+    /**
+     * What the checker knows about one element declaration, built once per declaration node
+     */
+    private static final class Rules {
+        String unsupported;                                         // why the element cannot be checked, or null
+        SimpleType text;                                            // simple content, null for complex types
+        Particle particle;                                          // element content, null if none
+        final Map<QName, Element> children = new HashMap<>();      // child declarations; null if a name is ambiguous
+        final Map<Particle, QName> names = new LinkedHashMap<>();  // name of every element particle
+        final Map<Particle, Set<QName>> firsts = new HashMap<>();  // names that can start one repetition
+        final Map<String, Element> attributes = new HashMap<>();
+        final List<String> requiredAttributes = new ArrayList<>();
+    }
+
+    private Rules buildRules(Element declaration) {
+        Rules result = new Rules();
+        String name = declaration.getAttribute("name");
+        // Abstract, fixed and default elements and identity constraints are not in the lists
+        result.unsupported = unmodelled(declaration);
+        if (result.unsupported != null) {
+            result.unsupported += " of element " + name;
+            return result;
+        }
+
+        Element complexType = schemaParser.findComplexType(declaration);
+        if (complexType == null) {
+            result.text = simpleType(declaration, 0);
+            // Elements of type anyType may have any content
+            if (result.text == null || "anyType".equals(result.text.builtin)) {
+                result.unsupported = "type of " + name;
+            }
+            return result;
+        }
+        result.unsupported = unsupportedConstruct(complexType, new HashSet<>());
+        if (result.unsupported != null) {
+            return result;
+        }
+
+        ContentModel model = schemaParser.getContentModel(declaration);
+        for (Element attribute : model.getAttributes()) {
+            String attributeName = attribute.getAttribute("name");
+            result.attributes.put(attributeName, attribute);
+            if ("required".equals(attribute.getAttribute("use"))) {
+                result.requiredAttributes.add(attributeName);
+            }
+        }
+        result.particle = model.getParticle();
+        if (result.particle == null) {
+            return result;
+        }
+        for (Particle element : result.particle.elements()) {
+            ElementInfo info = element.element;
+            Element child = expansion.resolveDeclaration(info.name, info.isReference, info.declaration);
+            QName childName = child != null ? elementName(child, info) : null;
+            if (childName == null) {
+                result.unsupported = "namespace of " + info.name + " in " + name;
+                return result;
+            }
+            result.names.put(element, childName);
+            if (!result.children.containsKey(childName)) {
+                result.children.put(childName, child);
+            } else if (result.children.get(childName) != child) {
+                result.children.put(childName, null);
+            }
+        }
+        collectFirsts(result, result.particle);
+        return result;
+    }
+
+    // Fill the names that can start one repetition of each particle
+    private static Set<QName> collectFirsts(Rules elementRules, Particle particle) {
+        Set<QName> first = new HashSet<>();
+        if (particle.kind == Particle.Kind.ELEMENT) {
+            first.add(elementRules.names.get(particle));
+        } else {
+            boolean open = true;
+            for (Particle child : particle.particles) {
+                Set<QName> childFirst = collectFirsts(elementRules, child);
+                // In a sequence, later particles can only start it if everything before them can be empty
+                if (open) {
+                    first.addAll(childFirst);
+                }
+                if (particle.kind == Particle.Kind.SEQUENCE && !isEmptiable(child)) {
+                    open = false;
+                }
+            }
+        }
+        elementRules.firsts.put(particle, first);
+        return first;
+    }
+
+    // Constructs of a complex type, its bases and groups that the checker does not model, or null
+    private String unsupportedConstruct(Element node, Set<Element> visited) {
+        if (!visited.add(node)) {
+            return null;
+        }
+        String reason = unmodelled(node);
+        if (reason != null) {
+            return reason;
+        }
+        if ("true".equals(node.getAttribute("mixed"))) {
+            return "mixed content";
+        }
+        if ("true".equals(node.getAttribute("abstract"))) {
+            return "abstract type " + node.getAttribute("name");
+        }
+        for (Element child : schemaChildren(node)) {
+            switch (child.getLocalName()) {
+                case "annotation":
+                case "element":
+                    // Local declarations and references get rules of their own
+                    break;
+                case "attribute":
+                    reason = unmodelled(child);
+                    if (reason == null && isQualified(child)) {
+                        reason = "qualified attribute " + child.getAttribute("name");
+                    }
+                    break;
+                case "extension": {
+                    Element base = schemaParser.resolveTypeDefinition(localName(child.getAttribute("base")));
+                    if (base == null || !"complexType".equals(base.getLocalName())) {
+                        return "base type " + child.getAttribute("base");
+                    }
+                    reason = unsupportedConstruct(base, visited);
+                    if (reason == null) {
+                        reason = unsupportedConstruct(child, visited);
+                    }
+                    break;
+                }
+                case "group": {
+                    // A reference leads to the group definition, which holds the content
+                    Element definition = schemaParser.resolveGroupDefinition(localName(child.getAttribute("ref")));
+                    reason = unmodelled(child);
+                    if (reason == null) {
+                        reason = definition != null ? unsupportedConstruct(definition, visited) : "group " + child.getAttribute("ref");
+                    }
+                    break;
+                }
+                default:
+                    reason = unsupportedConstruct(child, visited);
+                    break;
+            }
+            if (reason != null) {
+                return reason;
+            }
+        }
+        return null;
+    }
+
+    // The first attribute or child of a schema component that is not in the modelled lists, or null
+    private static String unmodelled(Element component) {
+        String kind = component.getLocalName();
+        Set<String> attributes = MODELLED_ATTRIBUTES.get(kind);
+        if (attributes == null) {
+            return kind;
+        }
+        NamedNodeMap present = component.getAttributes();
+        for (int i = 0; i < present.getLength(); i++) {
+            Node attribute = present.item(i);
+            // Namespace declarations and foreign attributes do not change what is valid
+            if (attribute.getNamespaceURI() == null && !attributes.contains(attribute.getLocalName())) {
+                return attribute.getLocalName() + " of " + kind;
+            }
+        }
+        Set<String> children = MODELLED_CHILDREN.get(kind);
+        for (Element child : schemaChildren(component)) {
+            if (!children.contains(child.getLocalName())) {
+                return child.getLocalName() + " in " + kind;
+            }
+        }
+        return null;
+    }
+
+    // True if instances must put a local attribute in the target namespace
+    private static boolean isQualified(Element attribute) {
+        Element schema = attribute.getOwnerDocument().getDocumentElement();
+        String form = attribute.hasAttribute("form") ? attribute.getAttribute("form") : schema.getAttribute("attributeFormDefault");
+        return "qualified".equals(form);
+    }
+
+    // Expanded name instances of a declaration have, or null if it cannot be told
+    private QName elementName(Element declaration, ElementInfo info) {
+        String namespace = namespaceOf(declaration);
+        if (namespace == null) {
+            return null;
+        }
+        if (info.isReference && info.declaration != null) {
+            // The prefix of the reference must lead to the namespace of the declaration found by its local name
+            String ref = info.declaration.getAttribute("ref");
+            String prefix = ref.contains(":") ? ref.substring(0, ref.indexOf(':')) : null;
+            String referenced = info.declaration.lookupNamespaceURI(prefix);
+            if (!namespace.equals(referenced != null ? referenced : "")) {
+                return null;
+            }
+        }
+        return new QName(namespace, declaration.getAttribute("name"));
+    }
+
+    // Target namespace of a global declaration, or of a qualified local one; null for chameleon includes
+    private static String namespaceOf(Element declaration) {
+        Element schema = declaration.getOwnerDocument().getDocumentElement();
+        if (!schema.hasAttribute("targetNamespace")) {
+            return null;
+        }
+        String targetNamespace = schema.getAttribute("targetNamespace");
+        if (declaration.getParentNode() == schema) {
+            return targetNamespace;
+        }
+        String form = declaration.hasAttribute("form") ? declaration.getAttribute("form") : schema.getAttribute("elementFormDefault");
+        return "qualified".equals(form) ? targetNamespace : "";
+    }
+
+    private Element globalDeclaration(QName name) {
+        Element declaration = generator.getGlobalElementDefinitions().get(name.getLocalPart());
+        return declaration != null && name.getNamespaceURI().equals(namespaceOf(declaration)) ? declaration : null;
+    }
+
+    private boolean usesSubstitutionGroups() {
+        Boolean uses = substitutionGroups;
+        if (uses == null) {
+            uses = false;
+            for (Element declaration : generator.getGlobalElementDefinitions().values()) {
+                if (declaration.hasAttribute("substitutionGroup")) {
+                    uses = true;
+                    break;
+                }
+            }
+            substitutionGroups = uses;
+        }
+        return uses;
+    }
+
+    /**
+     * Simple type of an element or attribute declaration: its built-in base type, its
+     * enumeration and whitespace handling, and whether it has other facets
+     */
+    private static final class SimpleType {
+        String builtin;
+        String whiteSpace;
+        List<String> enumeration;
+        boolean otherFacets;
+
+        SimpleType copy() {
+            SimpleType copy = new SimpleType();
+            copy.builtin = builtin;
+            copy.whiteSpace = whiteSpace;
+            copy.enumeration = enumeration;
+            copy.otherFacets = otherFacets;
+            return copy;
+        }
+    }
+
+    // Simple type of a declaration, or null if it has none or it is a list or union
+    private SimpleType simpleType(Element declaration, int depth) {
+        Element inline = generator.findChildElement(declaration, "simpleType");
+        if (inline != null) {
+            return restrictionOf(inline, depth);
+        }
+        String type = declaration.getAttribute("type");
+        return type.isEmpty() ? null : namedSimpleType(declaration, type, depth);
+    }
+
+    private SimpleType namedSimpleType(Element context, String typeName, int depth) {
+        String prefix = typeName.contains(":") ? typeName.substring(0, typeName.indexOf(':')) : null;
+        if (XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(context.lookupNamespaceURI(prefix))) {
+            SimpleType builtin = new SimpleType();
+            builtin.builtin = localName(typeName);
+            builtin.whiteSpace = "string".equals(builtin.builtin) ? "preserve"
+                               : "normalizedString".equals(builtin.builtin) ? "replace" : "collapse";
+            return builtin;
+        }
+        Element definition = schemaParser.resolveTypeDefinition(localName(typeName));
+        if (definition == null || !"simpleType".equals(definition.getLocalName()) || depth > 32) {
+            return null;
+        }
+        return restrictionOf(definition, depth + 1);
+    }
+
+    private SimpleType restrictionOf(Element simpleType, int depth) {
+        Element restriction = generator.findChildElement(simpleType, "restriction");
+        if (restriction == null) {
+            return null;
+        }
+        SimpleType base;
+        if (restriction.hasAttribute("base")) {
+            base = namedSimpleType(restriction, restriction.getAttribute("base"), depth + 1);
+        } else {
+            Element inline = generator.findChildElement(restriction, "simpleType");
+            base = inline != null && depth < 32 ? restrictionOf(inline, depth + 1) : null;
+        }
+        if (base == null) {
+            return null;
+        }
+        SimpleType derived = base.copy();
+        List<String> values = new ArrayList<>();
+        for (Element facet : schemaChildren(restriction)) {
+            switch (facet.getLocalName()) {
+                case "enumeration":
+                    values.add(facet.getAttribute("value"));
+                    break;
+                case "whiteSpace":
+                    derived.whiteSpace = facet.getAttribute("value");
+                    break;
+                case "simpleType":
+                case "annotation":
+                    break;
+                default:
+                    derived.otherFacets = true;
+                    break;
+            }
+        }
+        if (!values.isEmpty()) {
+            derived.enumeration = values;
+        }
+        return derived;
+    }
+
+    private void checkValue(SimpleType type, String raw, String key, Result result) {
+        if (type == null) {
+            result.undecided("type of " + key);
+            return;
+        }
+        String value = normalize(raw, type.whiteSpace);
+        boolean stringType = STRING_TYPES.contains(type.builtin);
+        if (type.enumeration != null) {
+            // Any literal of the enumeration is valid; other values only certainly fail for string types
+            if (type.enumeration.contains(value)) {
+                return;
+            }
+            if (stringType) {
+                result.violation(key, "value '" + value + "' of " + key + " is not one of its "
+                                 + type.enumeration.size() + " enumerated values");
+            } else {
+                result.undecided("enumerated " + type.builtin + " value of " + key);
+            }
+            return;
+        }
+        if (type.otherFacets) {
+            result.undecided("facets of " + key);
+            return;
+        }
+        if (stringType) {
+            return;
+        }
+        if ("boolean".equals(type.builtin)) {
+            if (!BOOLEAN_VALUES.contains(value)) {
+                result.violation(key, "value '" + value + "' of " + key + " is not a boolean");
+            }
+        } else if ("decimal".equals(type.builtin)) {
+            if (!DECIMAL.matcher(value).matches()) {
+                result.violation(key, "value '" + value + "' of " + key + " is not a decimal");
+            }
+        } else if (INTEGER_RANGES.containsKey(type.builtin)) {
+            BigInteger[] range = INTEGER_RANGES.get(type.builtin);
+            if (!INTEGER.matcher(value).matches()) {
+                result.violation(key, "value '" + value + "' of " + key + " is not an integer");
+                return;
+            }
+            BigInteger number = new BigInteger(value.startsWith("+") ? value.substring(1) : value);
+            if ((range[0] != null && number.compareTo(range[0]) < 0) || (range[1] != null && number.compareTo(range[1]) > 0)) {
+                result.violation(key, "value '" + value + "' of " + key + " is out of range for " + type.builtin);
+            }
+        } else {
+            result.undecided(type.builtin + " value of " + key);
+        }
+    }
+
+    private static String normalize(String value, String whiteSpace) {
+        if ("preserve".equals(whiteSpace)) {
+            return value;
+        }
+        String replaced = value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        return "replace".equals(whiteSpace) ? replaced : replaced.trim().replaceAll(" +", " ");
+    }
+
+    // Bounds of a two's complement type with the given number of value bits, or unsigned with bits > 0 and a zero lower bit count
+    private static BigInteger[] range(int lowerBits, int upperBits) {
+        BigInteger lower = lowerBits < 0 ? BigInteger.ONE.shiftLeft(-lowerBits).negate() : BigInteger.ZERO;
+        BigInteger upper = BigInteger.ONE.shiftLeft(upperBits).subtract(BigInteger.ONE);
+        return new BigInteger[]{lower, upper};
+    }
+
+    private static void modelled(String kind, Set<String> attributes, Set<String> children) {
+        MODELLED_ATTRIBUTES.put(kind, attributes);
+        MODELLED_CHILDREN.put(kind, children);
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static String localName(String qualifiedName) {
+        return qualifiedName.contains(":") ? qualifiedName.substring(qualifiedName.indexOf(':') + 1) : qualifiedName;
+    }
+
+    // Child elements in the XML Schema namespace, in document order
+    private static List<Element> schemaChildren(Element parent) {
+        List<Element> children = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                && XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(child.getNamespaceURI())) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+}
@@ -0,0 +1,333 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.w3c.dom.Element;
+
+/**
+ * Decides how far a complete instance of each element declaration is expanded, so that
+ * rendering always terminates. A declaration is expanded fully (every particle at least once)
+ * unless it lies on a recursion cycle or its full expansion would nest deeper than the depth
+ * budget; then it gets its shortest terminating expansion: required particles only, taking
+ * the shallowest alternative of each choice.
+ * Declarations are analysed once, as strongly connected components of the graph of complex
+ * child declarations in children-first order, and the result is kept per declaration node.
+ */
+public class InstanceExpansion {
+
+    static final int DEFAULT_MAX_DEPTH = 32;
+    // Depth of a declaration whose required content recurses without end
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private final XMLSchemaTestGenerator generator;
+    private final SchemaParser schemaParser;
+    private final Map<Element, Plan> plans = new ConcurrentHashMap<>();
+    // Tarjan state of the analysis in progress, guarded by this
+    private final Map<Element, Integer> index = new HashMap<>();
+    private final Map<Element, Integer> lowLink = new HashMap<>();
+    private final Deque<Element> stack = new ArrayDeque<>();
+    private final Set<Element> onStack = new HashSet<>();
+
+    public InstanceExpansion(XMLSchemaTestGenerator generator, SchemaParser schemaParser) {
+        this.generator = generator;
+        this.schemaParser = schemaParser;
+    }
+
+    /**
+     * Expansion of one declaration: whether it is expanded fully, and the nesting depth of
+     * its shortest terminating instance and of the instance actually rendered (1 for an
+     * element without element content)
+     */
+    static final class Plan {
+        boolean recursive;
+        boolean full;
+        int minimalDepth = UNBOUNDED;
+        int renderedDepth = UNBOUNDED;
+    }
+
+    /**
+     * Declaration an instance of the named element is rendered from: the global element a
+     * reference points to, or the global element of that name if there is no declaration
+     */
+    public Element resolveDeclaration(String elementName, boolean isReference, Element schemaElement) {
+        Map<String, Element> globals = generator.getGlobalElementDefinitions();
+        Element declaration = schemaElement;
+        if (isReference && schemaElement != null) {
+            String refName = schemaElement.getAttribute("ref");
+            if (!refName.isEmpty()) {
+                String refLocal = refName.contains(":") ? refName.split(":")[1] : refName;
+                if (globals.containsKey(refLocal)) {
+                    declaration = globals.get(refLocal);
+                }
+            }
+        }
+        String localName = elementName.contains(":") ? elementName.split(":")[1] : elementName;
+        if (declaration == null && globals.containsKey(localName)) {
+            declaration = globals.get(localName);
+        }
+        return declaration;
+    }
+
+    /**
+     * Expansion of the given resolved declaration, analysing it and everything below it on first use
+     */
+    public Plan getPlan(Element declaration) {
+        Plan plan = plans.get(declaration);
+        if (plan == null) {
+            plan = analyse(declaration);
+        }
+        return plan;
+    }
+
+    /**
+     * Alternative of a choice with the shallowest shortest terminating content, the first on ties
+     */
+    public Particle shallowestAlternative(Particle choice) {
+        return shallowestAlternative(choice, Collections.emptyMap());
+    }
+
+    private Particle shallowestAlternative(Particle choice, Map<Element, Plan> planned) {
+        Particle shallowest = null;
+        int shallowestDepth = UNBOUNDED;
+        for (Particle alternative : choice.particles) {
+            int depth = minimalContentDepth(alternative, planned);
+            if (shallowest == null || depth < shallowestDepth) {
+                shallowest = alternative;
+                shallowestDepth = depth;
+            }
+        }
+        return shallowest;
+    }
+
+    private synchronized Plan analyse(Element declaration) {
+        if (!plans.containsKey(declaration)) {
+            long start = System.nanoTime();
+            connect(declaration);
+            generator.getMetrics().record(RunMetrics.INDEX, start);
+        }
+        return plans.get(declaration);
+    }
+
+    // Declaration being visited by connect, with the next of its children to look at
+    private static final class Frame {
+        final Element declaration;
+        final List<Element> children;
+        int next;
+
+        Frame(Element declaration, List<Element> children) {
+            this.declaration = declaration;
+            this.children = children;
+        }
+    }
+
+    // Tarjan's algorithm with an explicit stack of frames, so long chains of nested declarations
+    // cannot overflow the call stack; a component is complete once its root is finished
+    private void connect(Element root) {
+        Deque<Frame> frames = new ArrayDeque<>();
+        visit(root, frames);
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            Element declaration = frame.declaration;
+            if (frame.next < frame.children.size()) {
+                Element child = frame.children.get(frame.next++);
+                if (plans.containsKey(child)) {
+                    continue;
+                }
+                if (!index.containsKey(child)) {
+                    visit(child, frames);
+                } else if (onStack.contains(child)) {
+                    lowLink.put(declaration, Math.min(lowLink.get(declaration), index.get(child)));
+                }
+                continue;
+            }
+
+            frames.pop();
+            if (lowLink.get(declaration).equals(index.get(declaration))) {
+                List<Element> component = new ArrayList<>();
+                Element member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    component.add(member);
+                } while (member != declaration);
+                plan(component);
+            }
+            Frame parent = frames.peek();
+            if (parent != null) {
+                lowLink.put(parent.declaration, Math.min(lowLink.get(parent.declaration), lowLink.get(declaration)));
+            }
+        }
+    }
+
+    private void visit(Element declaration, Deque<Frame> frames) {
+        int number = index.size();
+        index.put(declaration, number);
+        lowLink.put(declaration, number);
+        stack.push(declaration);
+        onStack.add(declaration);
+        frames.push(new Frame(declaration, complexChildren(declaration)));
+    }
+
+    // Plan one component; all components it depends on are already planned
+    private void plan(List<Element> component) {
+        Map<Element, Plan> planned = new HashMap<>();
+        for (Element member : component) {
+            planned.put(member, new Plan());
+        }
+        boolean recursive = component.size() > 1 || complexChildren(component.get(0)).contains(component.get(0));
+
+        // Shortest terminating depths shrink from unbounded until nothing changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Element member : component) {
+                Plan plan = planned.get(member);
+                int depth = add(1, minimalContentDepth(particle(member), planned));
+                if (depth < plan.minimalDepth) {
+                    plan.minimalDepth = depth;
+                    changed = true;
+                }
+            }
+        }
+
+        int maxDepth = generator.getMaxDepth();
+        for (Element member : component) {
+            Plan plan = planned.get(member);
+            plan.recursive = recursive;
+            int fullDepth = recursive ? UNBOUNDED : add(1, fullContentDepth(particle(member)));
+            plan.full = fullDepth <= maxDepth;
+            if (plan.full) {
+                plan.renderedDepth = fullDepth;
+            } else if (plan.minimalDepth == UNBOUNDED) {
+                // Written without content
+                plan.renderedDepth = 1;
+            }
+        }
+
+        // Required children may be expanded fully, so minimal instances can nest deeper than
+        // their shortest terminating depth; these depths shrink from unbounded as well
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (Element member : component) {
+                Plan plan = planned.get(member);
+                if (plan.full || plan.minimalDepth == UNBOUNDED) {
+                    continue;
+                }
+                int depth = add(1, requiredContentDepth(particle(member), planned));
+                if (depth < plan.renderedDepth) {
+                    plan.renderedDepth = depth;
+                    changed = true;
+                }
+            }
+        }
+
+        for (Element member : component) {
+            Plan plan = planned.get(member);
+            if (plan.minimalDepth == UNBOUNDED) {
+                Log.warn("Element " + member.getAttribute("name") + " has no finite instance (its required content"
+                         + " recurses without end); its instances are rendered without content");
+            } else if (!plan.full && !recursive && Log.isDebugEnabled()) {
+                Log.debug("Element " + member.getAttribute("name") + " would nest more levels deep than the depth budget of "
+                          + maxDepth + " when fully expanded; only required content is rendered, " + plan.renderedDepth + " levels deep");
+            }
+        }
+        plans.putAll(planned);
+    }
+
+    // Depth of the shortest valid content of a particle
+    private int minimalContentDepth(Particle particle, Map<Element, Plan> planned) {
+        if (particle == null || particle.minOccurs == 0) {
+            return 0;
+        }
+        if (particle.kind == Particle.Kind.ELEMENT) {
+            Element child = childDeclaration(particle.element);
+            if (child == null) {
+                return 1;
+            }
+            Plan plan = planned.containsKey(child) ? planned.get(child) : plans.get(child);
+            return plan != null ? plan.minimalDepth : UNBOUNDED;
+        }
+        int depth = particle.kind == Particle.Kind.CHOICE && !particle.particles.isEmpty() ? UNBOUNDED : 0;
+        for (Particle child : particle.particles) {
+            int childDepth = minimalContentDepth(child, planned);
+            depth = particle.kind == Particle.Kind.CHOICE ? Math.min(depth, childDepth) : Math.max(depth, childDepth);
+        }
+        return depth;
+    }
+
+    // Depth of the content of a minimal instance: required particles only and the shallowest alternative of a choice
+    private int requiredContentDepth(Particle particle, Map<Element, Plan> planned) {
+        if (particle == null || particle.minOccurs == 0) {
+            return 0;
+        }
+        if (particle.kind == Particle.Kind.ELEMENT) {
+            Element child = childDeclaration(particle.element);
+            if (child == null) {
+                return 1;
+            }
+            Plan plan = planned.containsKey(child) ? planned.get(child) : plans.get(child);
+            return plan != null ? plan.renderedDepth : UNBOUNDED;
+        }
+        if (particle.kind == Particle.Kind.CHOICE) {
+            Particle alternative = shallowestAlternative(particle, planned);
+            return alternative != null ? requiredContentDepth(alternative, planned) : 0;
+        }
+        int depth = 0;
+        for (Particle child : particle.particles) {
+            depth = Math.max(depth, requiredContentDepth(child, planned));
+        }
+        return depth;
+    }
+
+    // Depth of a full expansion: every particle at least once and the first alternative of a choice
+    private int fullContentDepth(Particle particle) {
+        if (particle == null) {
+            return 0;
+        }
+        if (particle.kind == Particle.Kind.ELEMENT) {
+            Element child = childDeclaration(particle.element);
+            return child != null ? plans.get(child).renderedDepth : 1;
+        }
+        if (particle.kind == Particle.Kind.CHOICE) {
+            return particle.particles.isEmpty() ? 0 : fullContentDepth(particle.particles.get(0));
+        }
+        int depth = 0;
+        for (Particle child : particle.particles) {
+            depth = Math.max(depth, fullContentDepth(child));
+        }
+        return depth;
+    }
+
+    private Particle particle(Element declaration) {
+        return schemaParser.getContentModel(declaration).getParticle();
+    }
+
+    // Declarations of the child elements rendered as complete instances, in document order
+    private List<Element> complexChildren(Element declaration) {
+        Particle particle = particle(declaration);
+        if (particle == null) {
+            return Collections.emptyList();
+        }
+        Set<Element> children = new LinkedHashSet<>();
+        for (Particle element : particle.elements()) {
+            Element child = childDeclaration(element.element);
+            if (child != null) {
+                children.add(child);
+            }
+        }
+        return new ArrayList<>(children);
+    }
+
+    // Resolved declaration of a child with element content, or null for a simple child
+    private Element childDeclaration(ElementInfo child) {
+        if (child.isSimpleType) {
+            return null;
+        }
+        Element declaration = resolveDeclaration(child.name, child.isReference, child.declaration);
+        return declaration != null && schemaParser.getContentModel(declaration).hasChildren() ? declaration : null;
+    }
+
+    private static int add(int a, int b) {
+        long sum = (long) a + b;
+        return sum >= UNBOUNDED ? UNBOUNDED : (int) sum;
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Output target for generated test documents.
+ * Structured output goes through an XMLStreamWriter; pre-rendered instance templates
+ * are copied verbatim to the same underlying character stream.
+ */
+public class InstanceWriter {
+
+    // XMLOutputFactory instances are not guaranteed to be thread-safe
+    private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY = ThreadLocal.withInitial(XMLOutputFactory::newFactory);
+
+    private final Writer out;
+    private final XMLStreamWriter xml;
+
+    public InstanceWriter(Writer out) throws XMLStreamException {
+        this.out = out;
+        // The stream writer flushes into our writer before every template is spliced in;
+        // keep those flushes from reaching the file so output stays fully buffered
+        this.xml = OUTPUT_FACTORY.get().createXMLStreamWriter(new FilterWriter(out) {
+            @Override
+            public void flush() {
+            }
+        });
+    }
+
+    public XMLStreamWriter xml() {
+        return xml;
+    }
+
+    /**
+     * Copy pre-rendered markup to the output the given number of times.
+     * Must not be called while a start tag is still open.
+     */
+    public void writeRaw(String markup, int count) throws XMLStreamException {
+        xml.flush();
+        try {
+            for (int i = 0; i < count; i++) {
+                out.write(markup);
+            }
+        } catch (IOException e) {
+            throw new XMLStreamException("Could not write to output", e);
+        }
+    }
+
+    /**
+     * The underlying character stream, for markup written around the stream writer;
+     * everything written so far is flushed to it first. Must not be called while a start
+     * tag is still open.
+     */
+    public Writer writer() throws XMLStreamException {
+        xml.flush();
+        return out;
+    }
+
+    /**
+     * Flush everything written so far to the underlying writer
+     */
+    public void flush() throws XMLStreamException {
+        xml.flush();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new XMLStreamException("Could not flush output", e);
+        }
+    }
+}
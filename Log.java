@@ -0,0 +1,66 @@
+import java.util.Locale;
+
+/**
+ * Minimal levelled logger for the generator.
+ * Messages at or above the configured level go to stdout (errors to stderr). Hot paths
+ * check isDebugEnabled() before building a message, so disabled debug output costs
+ * no string concatenation.
+ */
+public final class Log {
+
+    public enum Level {
+        ERROR, WARN, INFO, DEBUG
+    }
+
+    private static volatile Level level = Level.INFO;
+
+    private Log() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * Set the level from its name, ignoring case
+     */
+    public static void setLevel(String name) {
+        level = Level.valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) <= 0;
+    }
+
+    public static boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public static void debug(String message) {
+        if (isEnabled(Level.DEBUG)) {
+            System.out.println("[DEBUG] " + message);
+        }
+    }
+
+    public static void info(String message) {
+        if (isEnabled(Level.INFO)) {
+            System.out.println(message);
+        }
+    }
+
+    public static void warn(String message) {
+        if (isEnabled(Level.WARN)) {
+            System.out.println("WARNING: " + message);
+        }
+    }
+
+    public static void error(String message) {
+        if (isEnabled(Level.ERROR)) {
+            System.err.println(message);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+import java.io.Closeable;
+import java.io.IOException;
+import javax.xml.transform.Source;
+
+/**
+ * Destination for generated test files.
+ * File names keep the test-output/{positive,negative}/{cardinality,enumeration} layout;
+ * implementations must accept writes from several generator threads at once.
+ */
+public interface OutputSink extends Closeable {
+
+    /**
+     * Write one test file with the content produced by the renderer
+     */
+    void write(String fileName, TestCaseRenderer renderer) throws Exception;
+
+    /**
+     * Source for reading back a file written earlier, or null if files can only be read after close
+     */
+    Source read(String fileName) throws IOException;
+}
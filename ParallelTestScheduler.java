@@ -0,0 +1,115 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.w3c.dom.Element;
+
+/**
+ * Fork/join scheduler that generates test cases for all global elements in parallel.
+ * Work is split per global element and, within an element, per child cardinality
+ * constraint, and runs on a work-stealing pool with the configured parallelism.
+ * Every case writes to its own file name, so the generated output does not depend
+ * on the order in which tasks complete.
+ */
+public class ParallelTestScheduler {
+
+    private final XMLSchemaTestGenerator generator;
+    private final int parallelism;
+
+    public ParallelTestScheduler(XMLSchemaTestGenerator generator, int parallelism) {
+        this.generator = generator;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Generate tests for the given global elements and wait until all of them are done
+     */
+    public void run(Map<String, Element> elements, String targetNamespace, String schemaFile) {
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (Map.Entry<String, Element> entry : elements.entrySet()) {
+            tasks.add(new GlobalElementTask(entry.getKey(), entry.getValue(), targetNamespace, schemaFile));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Generates all tests for one global element, forking one subtask per child constraint
+     */
+    private class GlobalElementTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final String elementName;
+        private final Element elementDef;
+        private final String targetNamespace;
+        private final String schemaFile;
+
+        GlobalElementTask(String elementName, Element elementDef, String targetNamespace, String schemaFile) {
+            this.elementName = elementName;
+            this.elementDef = elementDef;
+            this.targetNamespace = targetNamespace;
+            this.schemaFile = schemaFile;
+        }
+
+        @Override
+        protected void compute() {
+            if (Log.isDebugEnabled()) {
+                Log.debug("Processing global element: " + elementName);
+            }
+
+            List<RecursiveAction> subtasks = new ArrayList<>();
+            List<ElementInfo> childElements = generator.getGlobalElementsMap().get(elementName);
+            if (childElements != null) {
+                for (ElementInfo childInfo : childElements) {
+                    subtasks.add(new CaseTask(elementName, () ->
+                        generator.getCardinalityTestGenerator().generateChildCardinalityTests(
+                            elementName, elementDef, childElements, childInfo, targetNamespace, schemaFile)));
+                }
+            }
+            subtasks.add(new CaseTask(elementName, () ->
+                generator.getEnumerationTestGenerator().generateEnumerationTests(
+                    elementName, elementDef, targetNamespace, schemaFile)));
+
+            invokeAll(subtasks);
+            generator.logElementSummary(elementName);
+        }
+    }
+
+    /**
+     * Leaf task running a single generator call
+     */
+    private class CaseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final String elementName;
+        private final GeneratorCall call;
+
+        CaseTask(String elementName, GeneratorCall call) {
+            this.elementName = elementName;
+            this.call = call;
+        }
+
+        @Override
+        protected void compute() {
+            generator.enterElement(elementName);
+            try {
+                call.run();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to generate tests for " + elementName + ": " + e.getMessage(), e);
+            } finally {
+                generator.exitElement();
+            }
+        }
+    }
+
+    private interface GeneratorCall {
+        void run() throws Exception;
+    }
+}
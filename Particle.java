@@ -0,0 +1,159 @@
+import java.util.*;
+
+/**
+ * One particle of a compiled content model: an element declaration, or a sequence, choice
+ * or all group of particles, with its occurrence range.
+ * Compiled once per complex type by SchemaParser, with group references and complexContent
+ * derivations already resolved, and never modified afterwards.
+ */
+public final class Particle {
+
+    enum Kind {
+        ELEMENT, SEQUENCE, CHOICE, ALL
+    }
+
+    final Kind kind;
+    final int minOccurs;
+    final int maxOccurs;
+    final ElementInfo element;      // ELEMENT particles only
+    final List<Particle> particles; // groups only
+
+    private Particle(Kind kind, int minOccurs, int maxOccurs, ElementInfo element, List<Particle> particles) {
+        this.kind = kind;
+        this.minOccurs = minOccurs;
+        this.maxOccurs = maxOccurs;
+        this.element = element;
+        this.particles = Collections.unmodifiableList(particles);
+    }
+
+    static Particle element(ElementInfo element) {
+        return new Particle(Kind.ELEMENT, element.minOccurs, element.maxOccurs, element, Collections.emptyList());
+    }
+
+    static Particle group(Kind kind, int minOccurs, int maxOccurs, List<Particle> particles) {
+        return new Particle(kind, minOccurs, maxOccurs, null, new ArrayList<>(particles));
+    }
+
+    /**
+     * True if the target is this particle or nested anywhere inside it
+     */
+    public boolean contains(Particle target) {
+        if (this == target) {
+            return true;
+        }
+        for (Particle particle : particles) {
+            if (particle.contains(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * First element particle in document order whose child name matches, or null
+     */
+    public Particle findElement(String name) {
+        if (kind == Kind.ELEMENT) {
+            return element.name.equals(name) ? this : null;
+        }
+        for (Particle particle : particles) {
+            Particle found = particle.findElement(name);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Element particles in document order
+     */
+    public List<Particle> elements() {
+        List<Particle> elements = new ArrayList<>();
+        collectElements(elements);
+        return elements;
+    }
+
+    private void collectElements(List<Particle> elements) {
+        if (kind == Kind.ELEMENT) {
+            elements.add(this);
+        }
+        for (Particle particle : particles) {
+            particle.collectElements(elements);
+        }
+    }
+
+    /**
+     * Fewest occurrences of the target element any valid content of this particle can have
+     */
+    public int minOccurrences(Particle target) {
+        if (!contains(target)) {
+            return 0;
+        }
+        if (this == target) {
+            return minOccurs;
+        }
+        return multiply(minOccurs, minContentOccurrences(target));
+    }
+
+    /**
+     * Most occurrences of the target element any valid content of this particle can have
+     */
+    public int maxOccurrences(Particle target) {
+        if (!contains(target)) {
+            return 0;
+        }
+        if (this == target) {
+            return maxOccurs;
+        }
+        return multiply(maxOccurs, maxContentOccurrences(target));
+    }
+
+    /**
+     * Fewest occurrences of the target in one repetition of this group
+     */
+    int minContentOccurrences(Particle target) {
+        if (kind == Kind.CHOICE) {
+            // Any other alternative can be chosen instead
+            int min = Integer.MAX_VALUE;
+            for (Particle particle : particles) {
+                min = Math.min(min, particle.minOccurrences(target));
+            }
+            return particles.isEmpty() ? 0 : min;
+        }
+        int sum = 0;
+        for (Particle particle : particles) {
+            sum = add(sum, particle.minOccurrences(target));
+        }
+        return sum;
+    }
+
+    /**
+     * Most occurrences of the target in one repetition of this group
+     */
+    int maxContentOccurrences(Particle target) {
+        int result = 0;
+        for (Particle particle : particles) {
+            int max = particle.maxOccurrences(target);
+            result = kind == Kind.CHOICE ? Math.max(result, max) : add(result, max);
+        }
+        return result;
+    }
+
+    // Arithmetic on occurrence counts, where Integer.MAX_VALUE stands for unbounded
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        if (a == Integer.MAX_VALUE || b == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        long product = (long) a * b;
+        return product >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) product;
+    }
+
+    private static int add(int a, int b) {
+        long sum = (long) a + b;
+        return sum >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+}
@@ -0,0 +1,65 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * Reads a streamed test case while it is being rendered, without holding the document in
+ * memory. The renderer writes into a pipe from a thread of its own; closing the pipe waits
+ * for it and reports a rendering failure. Each pipe renders the case once, so a case that is
+ * read twice is rendered twice.
+ */
+public class RenderPipe implements AutoCloseable {
+
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final String fileName;
+    private final PipedInputStream input = new PipedInputStream(PIPE_SIZE);
+    private final Thread renderThread;
+    private volatile boolean closed;
+    private volatile Exception failure;
+
+    public RenderPipe(TestCaseRenderer renderer, String fileName) throws IOException {
+        this.fileName = fileName;
+        PipedOutputStream output = new PipedOutputStream(input);
+        renderThread = new Thread(() -> {
+            try (PipedOutputStream out = output) {
+                renderer.render(out);
+            } catch (Exception e) {
+                // Once the reader has stopped, writing fails because nobody reads any more
+                if (!closed) {
+                    failure = e;
+                }
+            }
+        }, "render-" + fileName);
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    public InputStream getInput() {
+        return input;
+    }
+
+    /**
+     * Stop reading, wait for the renderer and rethrow what made it fail
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        input.close();
+        // A renderer waiting for room in the pipe only notices the closed reader when woken
+        renderThread.interrupt();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + fileName + " to be rendered");
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new IOException("Could not render " + fileName, failure);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts, latencies and latency histograms for one generator run.
+ * Time is recorded per pipeline phase (load, index, render, write, validate), per global
+ * element and per test category, together with hit and miss counts of the run's caches.
+ * All recording methods are lock-free and may be called from any thread.
+ */
+public class RunMetrics {
+
+    public static final String LOAD = "load";
+    public static final String INDEX = "index";
+    public static final String RENDER = "render";
+    public static final String WRITE = "write";
+    public static final String VALIDATE = "validate";
+
+    private final Map<String, Timer> phases = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Timer>> elements = new ConcurrentHashMap<>();
+    private final Map<String, Timer> categories = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder[]> caches = new ConcurrentHashMap<>();
+    // Global element whose tests the current thread is generating
+    private final ThreadLocal<String> currentElement = new ThreadLocal<>();
+
+    /**
+     * Attribute phases recorded on this thread to the given global element until exitElement
+     */
+    public void enterElement(String elementName) {
+        currentElement.set(elementName);
+    }
+
+    public void exitElement() {
+        currentElement.remove();
+    }
+
+    /**
+     * Record a phase that started at the given System.nanoTime() and ends now
+     */
+    public void record(String phase, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        phases.computeIfAbsent(phase, k -> new Timer()).record(nanos);
+        String element = currentElement.get();
+        if (element != null) {
+            elements.computeIfAbsent(element, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(phase, k -> new Timer()).record(nanos);
+        }
+    }
+
+    /**
+     * Record the time spent writing and validating one case of a test category, e.g. positive/cardinality
+     */
+    public void recordCase(String category, long nanos) {
+        categories.computeIfAbsent(category, k -> new Timer()).record(nanos);
+    }
+
+    public void cacheHit(String cache) {
+        cacheCounters(cache)[0].increment();
+    }
+
+    public void cacheMiss(String cache) {
+        cacheCounters(cache)[1].increment();
+    }
+
+    /**
+     * Add hits and misses counted elsewhere, e.g. by the schema cache
+     */
+    public void addCacheCounts(String cache, long hits, long misses) {
+        LongAdder[] counters = cacheCounters(cache);
+        counters[0].add(hits);
+        counters[1].add(misses);
+    }
+
+    private LongAdder[] cacheCounters(String cache) {
+        return caches.computeIfAbsent(cache, k -> new LongAdder[]{new LongAdder(), new LongAdder()});
+    }
+
+    /**
+     * Test category of an output file, e.g. positive/cardinality for test-output/positive/cardinality/x.xml
+     */
+    public static String categoryOf(String fileName) {
+        String[] parts = fileName.replace('\\', '/').split("/");
+        return parts.length >= 3 ? parts[parts.length - 3] + "/" + parts[parts.length - 2] : "other";
+    }
+
+    /**
+     * Total time recorded for a phase, in nanoseconds
+     */
+    public long getPhaseNanos(String phase) {
+        Timer timer = phases.get(phase);
+        return timer != null ? timer.totalNanos.sum() : 0;
+    }
+
+    /**
+     * Write all metrics as JSON; times are in microseconds
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\n");
+        out.write("  \"phases\": {");
+        writeTimers(out, new TreeMap<>(phases), "    ");
+        out.write("},\n");
+
+        out.write("  \"elements\": {");
+        boolean first = true;
+        for (Map.Entry<String, Map<String, Timer>> entry : new TreeMap<>(elements).entrySet()) {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            out.write("    " + ValidationReport.quote(entry.getKey()) + ": {");
+            writeTimers(out, new TreeMap<>(entry.getValue()), "      ");
+            out.write("}");
+        }
+        out.write(first ? "},\n" : "\n  },\n");
+
+        out.write("  \"categories\": {");
+        writeTimers(out, new TreeMap<>(categories), "    ");
+        out.write("},\n");
+
+        out.write("  \"caches\": {");
+        first = true;
+        for (Map.Entry<String, LongAdder[]> entry : new TreeMap<>(caches).entrySet()) {
+            long hits = entry.getValue()[0].sum();
+            long misses = entry.getValue()[1].sum();
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            out.write("    " + ValidationReport.quote(entry.getKey()) + ": {\"hits\": " + hits + ", \"misses\": " + misses
+                      + ", \"hitRate\": " + String.format(Locale.ROOT, "%.4f", hits + misses == 0 ? 0.0 : hits / (double) (hits + misses))
+                      + "}");
+        }
+        out.write(first ? "}\n" : "\n  }\n");
+        out.write("}\n");
+    }
+
+    private static void writeTimers(Writer out, Map<String, Timer> timers, String indent) throws IOException {
+        boolean first = true;
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            out.write(indent + ValidationReport.quote(entry.getKey()) + ": " + entry.getValue().toJson());
+        }
+        if (!first) {
+            out.write("\n" + indent.substring(2));
+        }
+    }
+
+    /**
+     * One-line summary of the total time per phase
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder("Timings:");
+        for (String phase : new String[]{LOAD, INDEX, RENDER, WRITE, VALIDATE}) {
+            double millis = getPhaseNanos(phase) / 1e6;
+            summary.append(String.format(Locale.ROOT, " %s %.1f ms,", phase, millis));
+        }
+        summary.setLength(summary.length() - 1);
+        return summary.toString();
+    }
+
+    /**
+     * Latency recorder with power-of-two microsecond buckets
+     */
+    private static final class Timer {
+        private static final int BUCKETS = 32;
+
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        // Bucket i counts latencies below 2^i microseconds; the last one also holds everything longer
+        final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        Timer() {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long micros = nanos / 1_000;
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            histogram[bucket].increment();
+        }
+
+        // Upper bound in microseconds of the bucket holding the given quantile
+        long percentile(double quantile, long[] counts, long total) {
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        String toJson() {
+            long n = count.sum();
+            long total = totalNanos.sum();
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram[i].sum();
+            }
+
+            StringBuilder json = new StringBuilder("{");
+            json.append("\"count\": ").append(n);
+            json.append(", \"totalUs\": ").append(total / 1_000);
+            json.append(", \"meanUs\": ").append(n == 0 ? 0 : total / n / 1_000);
+            json.append(", \"maxUs\": ").append(maxNanos.get() / 1_000);
+            json.append(", \"p50Us\": ").append(percentile(0.50, counts, n));
+            json.append(", \"p90Us\": ").append(percentile(0.90, counts, n));
+            json.append(", \"p99Us\": ").append(percentile(0.99, counts, n));
+            json.append(", \"histogram\": {");
+            boolean first = true;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] > 0) {
+                    json.append(first ? "" : ", ").append("\"<").append(1L << i).append("us\": ").append(counts[i]);
+                    first = false;
+                }
+            }
+            return json.append("}}").toString();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Shows how generation time and memory grow with schema size.
+ * Generates synthetic schema bundles of increasing size with SyntheticSchemaGenerator, runs
+ * the full generator on each without writing files, and prints one row per size with the
+ * time per phase, peak and retained heap, and the growth exponent against the previous size
+ * (1.0 is linear). Rows growing faster than linear are flagged. Each row also counts the cases
+ * not validating as expected, which should be 0: otherwise the timings measure a broken suite.
+ * Each bundle has depth 3, an xs:choice of 4 alternatives, 50-value enumerations, two
+ * imported namespaces and one included file per 50 global elements.
+ *
+ * Usage: java ScalingReport [elements ...]  (default 100 200 400 800 1600)
+ */
+public class ScalingReport {
+
+    private static final double SUPER_LINEAR = 1.2;
+
+    public static void main(String[] args) throws Exception {
+        Log.setLevel(Log.Level.ERROR);
+        int[] sizes = args.length > 0
+            ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+            : new int[]{100, 200, 400, 800, 1600};
+
+        File workDir = Files.createTempDirectory("xsd-scale").toFile();
+        // Warm up the JIT so that the first row is not dominated by compilation
+        run(bundle(sizes[0], workDir));
+
+        System.out.printf("%8s %6s %9s %8s %8s %9s %8s %8s %9s %9s %9s %9s %7s %7s%n",
+                          "elements", "files", "schema KB", "cases", "mismatch", "total ms", "load ms", "index ms",
+                          "render ms", "valid. ms", "peak MB", "kept MB", "time^", "mem^");
+        Result previous = null;
+        int previousElements = 0;
+        for (int elements : sizes) {
+            Result result = run(bundle(elements, workDir));
+            String timeGrowth = previous != null ? growth(previousElements, elements, previous.nanos, result.nanos) : "";
+            String memoryGrowth = previous != null ? growth(previousElements, elements, previous.peakBytes, result.peakBytes) : "";
+            System.out.printf("%8d %6d %9d %8d %8d %9.0f %8.0f %8.0f %9.0f %9.0f %9.1f %9.1f %7s %7s%n",
+                              elements, result.files, result.schemaBytes / 1024, result.cases, result.mismatches, result.nanos / 1e6,
+                              result.metrics.getPhaseNanos(RunMetrics.LOAD) / 1e6,
+                              result.metrics.getPhaseNanos(RunMetrics.INDEX) / 1e6,
+                              result.metrics.getPhaseNanos(RunMetrics.RENDER) / 1e6,
+                              result.metrics.getPhaseNanos(RunMetrics.VALIDATE) / 1e6,
+                              result.peakBytes / 1048576.0, result.retainedBytes / 1048576.0, timeGrowth, memoryGrowth);
+            previous = result;
+            previousElements = elements;
+        }
+
+        for (File file : workDir.listFiles()) {
+            file.delete();
+        }
+        workDir.delete();
+    }
+
+    // Write the bundle for the given number of global elements into the work directory
+    private static File bundle(int elements, File workDir) throws Exception {
+        SyntheticSchemaGenerator schemas = new SyntheticSchemaGenerator(elements, 3);
+        schemas.setChoiceWidth(4);
+        schemas.setEnumValues(50);
+        schemas.setImports(2);
+        schemas.setIncludes(elements / 50);
+        return schemas.write(workDir);
+    }
+
+    private static Result run(File schema) throws Exception {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        long baseline = usedHeap();
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+
+        XMLSchemaTestGenerator generator = new XMLSchemaTestGenerator();
+        generator.setWriteFiles(false);
+        long start = System.nanoTime();
+        generator.generateTests(schema.getPath());
+        long nanos = System.nanoTime() - start;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        // Heap still held by the generator once the run is over, e.g. the schema model
+        System.gc();
+        long retained = usedHeap() - baseline;
+
+        Result result = new Result();
+        List<File> files = bundleFiles(schema);
+        result.files = files.size();
+        for (File file : files) {
+            result.schemaBytes += file.length();
+        }
+        result.cases = generator.getValidationReport().size();
+        result.mismatches = generator.getValidationReport().getMismatches().size();
+        result.nanos = nanos;
+        result.peakBytes = Math.max(0, peak - baseline);
+        result.retainedBytes = Math.max(0, retained);
+        result.metrics = generator.getMetrics();
+        return result;
+    }
+
+    // The root schema and the included and imported files written with it
+    private static List<File> bundleFiles(File schema) {
+        String baseName = schema.getName().substring(0, schema.getName().length() - ".xsd".length());
+        List<File> files = new ArrayList<>();
+        for (File file : schema.getParentFile().listFiles()) {
+            if (file.getName().equals(schema.getName()) || file.getName().startsWith(baseName + "_")) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Exponent k of value ~ size^k between two rows, flagged when above SUPER_LINEAR
+    private static String growth(int fromSize, int toSize, long fromValue, long toValue) {
+        if (fromValue <= 0 || toValue <= 0 || fromSize == toSize) {
+            return "-";
+        }
+        double exponent = Math.log(toValue / (double) fromValue) / Math.log(toSize / (double) fromSize);
+        return String.format(Locale.ROOT, "%.2f%s", exponent, exponent > SUPER_LINEAR ? "!" : "");
+    }
+
+    private static final class Result {
+        int files;
+        long schemaBytes;
+        int cases;
+        int mismatches;
+        long nanos;
+        long peakBytes;
+        long retainedBytes;
+        RunMetrics metrics;
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Thread-safe cache of compiled schemas.
+ * Entries are keyed by the canonical schema path and are only reused while the
+ * modification times of the schema and its include/import closure are unchanged.
+ * The closure is fingerprinted once per load (see refresh), not on every lookup.
+ */
+public class SchemaCache {
+
+    private final Map<String, CachedSchema> schemas = new ConcurrentHashMap<>();
+    // Canonical path and closure fingerprint per schema path as given, set when the schema is loaded
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Fingerprint the schema and its include/import closure as they are now; called once
+     * each time the schema is loaded, so that later lookups need no file system access
+     */
+    public void refresh(String schemaFile, Collection<String> closure) throws IOException {
+        String key = new File(schemaFile).getCanonicalPath();
+        registrations.put(schemaFile, new Registration(key, fingerprint(key, closure)));
+    }
+
+    /**
+     * Return the compiled schema for the given file, compiling it on first use
+     * or when any file in its closure was modified before the schema was last loaded
+     */
+    public Schema getSchema(String schemaFile, Collection<String> closure) throws SAXException, IOException {
+        Registration registration = registrations.get(schemaFile);
+        if (registration == null) {
+            refresh(schemaFile, closure);
+            registration = registrations.get(schemaFile);
+        }
+        String key = registration.canonicalPath;
+        String fingerprint = registration.fingerprint;
+
+        CachedSchema cached = schemas.get(key);
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            hits.incrementAndGet();
+            return cached.schema;
+        }
+
+        synchronized (this) {
+            // Another thread may have compiled it while we were waiting
+            cached = schemas.get(key);
+            if (cached != null && cached.fingerprint.equals(fingerprint)) {
+                hits.incrementAndGet();
+                return cached.schema;
+            }
+
+            misses.incrementAndGet();
+            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+
+            // Set up basic properties for schema resolution
+            factory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "file");
+            factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+
+            Schema schema = factory.newSchema(new File(key));
+            schemas.put(key, new CachedSchema(fingerprint, schema));
+            return schema;
+        }
+    }
+
+    /**
+     * Build a fingerprint from the canonical paths and modification times of all schema files
+     */
+    private String fingerprint(String canonicalPath, Collection<String> closure) throws IOException {
+        SortedMap<String, Long> stamps = new TreeMap<>();
+        stamps.put(canonicalPath, new File(canonicalPath).lastModified());
+        if (closure != null) {
+            for (String path : closure) {
+                File file = new File(path).getCanonicalFile();
+                stamps.put(file.getPath(), file.lastModified());
+            }
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+        for (Map.Entry<String, Long> entry : stamps.entrySet()) {
+            fingerprint.append(entry.getKey()).append('@').append(entry.getValue()).append(';');
+        }
+        return fingerprint.toString();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Schema cache: " + hits.get() + " hits, " + misses.get() + " misses";
+    }
+
+    /**
+     * Canonical path and closure fingerprint of a loaded schema
+     */
+    private static class Registration {
+        final String canonicalPath;
+        final String fingerprint;
+
+        Registration(String canonicalPath, String fingerprint) {
+            this.canonicalPath = canonicalPath;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * Compiled schema together with the fingerprint it was compiled from
+     */
+    private static class CachedSchema {
+        final String fingerprint;
+        final Schema schema;
+
+        CachedSchema(String fingerprint, Schema schema) {
+            this.fingerprint = fingerprint;
+            this.schema = schema;
+        }
+    }
+}
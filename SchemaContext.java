@@ -0,0 +1,54 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.w3c.dom.Element;
+
+/**
+ * Schema state shared by all generators of one run.
+ * Holds the single parser, whose type index and content models are filled once while the
+ * schema is loaded, the enumeration cache, the value helper, the expansion plans, the
+ * instance renderer and the fast-mode instance checker, so cardinality and enumeration
+ * cases resolve named types and render instances the same way.
+ */
+public class SchemaContext {
+
+    private final SchemaParser parser;
+    private final XmlValueHelper valueHelper;
+    private final InstanceExpansion expansion;
+    private final TestXmlGenerator xmlGenerator;
+    private final InstanceChecker checker;
+    // Enumeration values per declaration node; names such as "type" are not unique
+    private final Map<Element, List<String>> enumValueCache = new ConcurrentHashMap<>();
+
+    public SchemaContext(XMLSchemaTestGenerator generator) {
+        this.parser = new SchemaParser(generator, enumValueCache);
+        this.valueHelper = new XmlValueHelper(parser);
+        this.expansion = new InstanceExpansion(generator, parser);
+        this.xmlGenerator = new TestXmlGenerator(generator, parser, valueHelper, expansion);
+        this.checker = new InstanceChecker(generator, parser, expansion);
+    }
+
+    public SchemaParser getParser() {
+        return parser;
+    }
+
+    public XmlValueHelper getValueHelper() {
+        return valueHelper;
+    }
+
+    public InstanceExpansion getExpansion() {
+        return expansion;
+    }
+
+    public TestXmlGenerator getXmlGenerator() {
+        return xmlGenerator;
+    }
+
+    public InstanceChecker getChecker() {
+        return checker;
+    }
+    
+    public Map<Element, List<String>> getEnumValueCache() {
+        return enumValueCache;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.*;
+import org.w3c.dom.Element;
+
+/**
+ * Read-only view of a parsed schema set.
+ * Built once after all included/imported schemas have been loaded and indexed;
+ * none of its maps can be modified afterwards, so generator threads can share it
+ * without locking.
+ */
+public final class SchemaModel {
+
+    private final Map<String, String> namespaces;
+    private final Map<String, List<ElementInfo>> globalElements;
+    private final Map<String, Element> globalElementDefinitions;
+    private final Map<String, Element> typeDefinitions;
+    private final Map<String, Element> groupDefinitions;
+    private final Map<String, ElementInfo> elementInfoIndex;
+    private final String defaultNamespacePrefix;
+
+    public SchemaModel(Map<String, String> namespaces, Map<String, List<ElementInfo>> globalElements,
+                       Map<String, Element> globalElementDefinitions, Map<String, Element> typeDefinitions,
+                       Map<String, Element> groupDefinitions, String defaultNamespacePrefix) {
+        this.namespaces = Collections.unmodifiableMap(new LinkedHashMap<>(namespaces));
+        Map<String, List<ElementInfo>> elements = new LinkedHashMap<>();
+        for (Map.Entry<String, List<ElementInfo>> entry : globalElements.entrySet()) {
+            elements.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        this.globalElements = Collections.unmodifiableMap(elements);
+        
+        // Index child element infos by name; the first declaration found wins, as with a linear scan
+        Map<String, ElementInfo> index = new HashMap<>();
+        for (List<ElementInfo> childList : elements.values()) {
+            for (ElementInfo info : childList) {
+                index.putIfAbsent(info.name, info);
+            }
+        }
+        this.elementInfoIndex = Collections.unmodifiableMap(index);
+        this.globalElementDefinitions = Collections.unmodifiableMap(new LinkedHashMap<>(globalElementDefinitions));
+        this.typeDefinitions = Collections.unmodifiableMap(new LinkedHashMap<>(typeDefinitions));
+        this.groupDefinitions = Collections.unmodifiableMap(new LinkedHashMap<>(groupDefinitions));
+        this.defaultNamespacePrefix = defaultNamespacePrefix;
+    }
+
+    /**
+     * Namespace prefix to URI mappings declared by all loaded schemas
+     */
+    public Map<String, String> getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * Child element information for each global element that has children
+     */
+    public Map<String, List<ElementInfo>> getGlobalElements() {
+        return globalElements;
+    }
+
+    /**
+     * Schema declaration of each global element by name
+     */
+    public Map<String, Element> getGlobalElementDefinitions() {
+        return globalElementDefinitions;
+    }
+
+    /**
+     * Global simpleType and complexType definitions by name
+     */
+    public Map<String, Element> getTypeDefinitions() {
+        return typeDefinitions;
+    }
+
+    /**
+     * Named model group (xs:group) definitions by name
+     */
+    public Map<String, Element> getGroupDefinitions() {
+        return groupDefinitions;
+    }
+
+    /**
+     * Find the element info declared under the given name by any global element, or null
+     */
+    public ElementInfo findElementInfo(String name) {
+        return elementInfoIndex.get(name);
+    }
+
+    /**
+     * Find the schema declaration for the given element name: the global definition for
+     * references and global elements, otherwise the local declaration it was parsed from
+     */
+    public Element findElementDeclaration(String name) {
+        ElementInfo info = elementInfoIndex.get(name);
+        String localName = name.contains(":") ? name.substring(name.indexOf(':') + 1) : name;
+        if ((info == null || info.isReference) && globalElementDefinitions.containsKey(localName)) {
+            return globalElementDefinitions.get(localName);
+        }
+        return info != null ? info.declaration : null;
+    }
+
+    public String getDefaultNamespacePrefix() {
+        return defaultNamespacePrefix;
+    }
+}
@@ -1,5 +1,11 @@
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import javax.xml.XMLConstants;
 import org.w3c.dom.*;
 
@@ -8,77 +14,169 @@ import org.w3c.dom.*;
  */
 public class SchemaParser {
     
+    // Built-in XSD simple types, accepted with or without prefix
+    private static final Set<String> XSD_SIMPLE_TYPES = new HashSet<>(Arrays.asList(
+        "string", "boolean", "decimal", "float", "double", "duration", "dateTime", "time",
+        "date", "gYearMonth", "gYear", "gMonthDay", "gDay", "gMonth", "hexBinary",
+        "base64Binary", "anyURI", "QName", "NOTATION", "normalizedString", "token",
+        "language", "IDREFS", "ENTITIES", "NMTOKEN", "NMTOKENS", "Name", "NCName",
+        "ID", "IDREF", "ENTITY", "integer", "nonPositiveInteger", "negativeInteger",
+        "long", "int", "short", "byte", "nonNegativeInteger", "unsignedLong",
+        "unsignedInt", "unsignedShort", "unsignedByte", "positiveInteger"
+    ));
+    
     private XMLSchemaTestGenerator generator;
+    // Indexes filled by findAllGlobalElements and frozen by buildModel
+    private final Map<String, List<ElementInfo>> globalElementsMap = new HashMap<>();
+    private final Map<String, Element> globalElementDefinitions = new HashMap<>();
     // Map to store all global type definitions (simpleType and complexType) by name
-    private Map<String, Element> typeDefinitions = new HashMap<>();
+    private final Map<String, Element> typeDefinitions = new HashMap<>();
+    // Named model groups (xs:group) by name
+    private final Map<String, Element> groupDefinitions = new HashMap<>();
+    // Resolved content models by declaration; DOM nodes compare by identity
+    private final Map<Element, ContentModel> contentModels = new ConcurrentHashMap<>();
+    // Compiled particle trees by complex type node, shared by all declarations of a named type;
+    // empty for types without element content
+    private final Map<Element, Optional<Particle>> compiledTypes = new ConcurrentHashMap<>();
+    // Enumeration values by declaration node, shared through the schema context
+    private final Map<Element, List<String>> enumValueCache;
     
     public SchemaParser(XMLSchemaTestGenerator generator) {
+        this(generator, new ConcurrentHashMap<>());
+    }
+    
+    public SchemaParser(XMLSchemaTestGenerator generator, Map<Element, List<String>> enumValueCache) {
         this.generator = generator;
+        this.enumValueCache = enumValueCache;
     }
     
     /**
-     * Collect included and imported schema documents
+     * Collect included and imported schema documents.
+     * All referenced files are parsed concurrently first; the documents are then added in the
+     * same depth-first order, includes before imports, as a sequential traversal would add them.
      */
     public void collectIncludedSchemas(Document schemaDoc, String baseSchemaFile, 
                                       Set<String> processedSchemas, List<Document> schemaDocuments) throws Exception {
-        File baseFile = new File(baseSchemaFile);
-        String basePath = baseFile.getParent();
+        Map<String, LoadedSchema> loaded = new ConcurrentHashMap<>();
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        visited.addAll(processedSchemas);
+        
+        int parallelism = generator.getParallelism() > 1
+            ? generator.getParallelism() : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new LoadTask(schemaDoc, baseSchemaFile, loaded, visited));
+        } finally {
+            pool.shutdown();
+        }
+        
+        addLoadedSchemas(schemaDoc, baseSchemaFile, loaded, processedSchemas, schemaDocuments);
+    }
+    
+    /**
+     * Add the loaded documents referenced from a schema, recursing depth-first like the original traversal
+     */
+    private void addLoadedSchemas(Document schemaDoc, String baseSchemaFile, Map<String, LoadedSchema> loaded,
+                                  Set<String> processedSchemas, List<Document> schemaDocuments) {
+        for (SchemaReference reference : findSchemaReferences(schemaDoc, baseSchemaFile)) {
+            if (processedSchemas.contains(reference.path)) {
+                continue;
+            }
+            LoadedSchema schema = loaded.get(reference.path);
+            if (schema == null || schema.document == null) {
+                Log.warn("Could not process " + (reference.isImport ? "imported" : "included")
+                         + " schema: " + reference.path);
+                continue;
+            }
+            schemaDocuments.add(schema.document);
+            processedSchemas.add(reference.path);
+            
+            // Extract namespace information from included or imported schema
+            generator.extractNamespaces(schema.document.getDocumentElement());
+            
+            // Recursively process includes/imports
+            addLoadedSchemas(schema.document, reference.path, loaded, processedSchemas, schemaDocuments);
+        }
+    }
+    
+    /**
+     * xs:include and xs:import locations of a schema document, includes first, resolved against its directory
+     */
+    private List<SchemaReference> findSchemaReferences(Document schemaDoc, String baseSchemaFile) {
+        String basePath = new File(baseSchemaFile).getParent();
         if (basePath == null) {
             basePath = ".";
         }
         
-        // Process includes
-        NodeList includes = schemaDoc.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "include");
-        for (int i = 0; i < includes.getLength(); i++) {
-            Element include = (Element) includes.item(i);
-            String schemaLocation = include.getAttribute("schemaLocation");
-            
-            if (!schemaLocation.isEmpty()) {
-                String fullPath = basePath + File.separator + schemaLocation;
-                
-                if (!processedSchemas.contains(fullPath)) {
-                    try {
-                        Document includedDoc = generator.parseXmlFile(fullPath);
-                        schemaDocuments.add(includedDoc);
-                        processedSchemas.add(fullPath);
-                        
-                        // Extract namespace information from included schema
-                        generator.extractNamespaces(includedDoc.getDocumentElement());
-                        
-                        // Recursively process includes/imports
-                        collectIncludedSchemas(includedDoc, fullPath, processedSchemas, schemaDocuments);
-                    } catch (Exception e) {
-                        System.err.println("Warning: Could not process included schema: " + fullPath);
-                    }
+        List<SchemaReference> references = new ArrayList<>();
+        for (String tag : new String[]{"include", "import"}) {
+            NodeList nodes = schemaDoc.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, tag);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                String schemaLocation = ((Element) nodes.item(i)).getAttribute("schemaLocation");
+                if (!schemaLocation.isEmpty()) {
+                    references.add(new SchemaReference(basePath + File.separator + schemaLocation, "import".equals(tag)));
                 }
             }
         }
+        return references;
+    }
+    
+    /**
+     * Parses one schema file, unless its document is already given, and forks a task
+     * for every referenced file no other task has visited yet
+     */
+    private class LoadTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final String schemaFile;
+        private final Map<String, LoadedSchema> loaded;
+        private final Set<String> visited;
+        private Document schemaDoc;
+        
+        LoadTask(Document schemaDoc, String schemaFile, Map<String, LoadedSchema> loaded, Set<String> visited) {
+            this.schemaDoc = schemaDoc;
+            this.schemaFile = schemaFile;
+            this.loaded = loaded;
+            this.visited = visited;
+        }
         
-        // Process imports
-        NodeList imports = schemaDoc.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "import");
-        for (int i = 0; i < imports.getLength(); i++) {
-            Element importElem = (Element) imports.item(i);
-            String schemaLocation = importElem.getAttribute("schemaLocation");
+        @Override
+        protected void compute() {
+            if (schemaDoc == null) {
+                try {
+                    schemaDoc = generator.parseSchemaFile(schemaFile);
+                } catch (Exception e) {
+                    loaded.put(schemaFile, new LoadedSchema(null));
+                    return;
+                }
+                loaded.put(schemaFile, new LoadedSchema(schemaDoc));
+            }
             
-            if (!schemaLocation.isEmpty()) {
-                String fullPath = basePath + File.separator + schemaLocation;
-                
-                if (!processedSchemas.contains(fullPath)) {
-                    try {
-                        Document importedDoc = generator.parseXmlFile(fullPath);
-                        schemaDocuments.add(importedDoc);
-                        processedSchemas.add(fullPath);
-                        
-                        // Extract namespace information from imported schema
-                        generator.extractNamespaces(importedDoc.getDocumentElement());
-                        
-                        // Recursively process includes/imports
-                        collectIncludedSchemas(importedDoc, fullPath, processedSchemas, schemaDocuments);
-                    } catch (Exception e) {
-                        System.err.println("Warning: Could not process imported schema: " + fullPath);
-                    }
+            List<LoadTask> subtasks = new ArrayList<>();
+            for (SchemaReference reference : findSchemaReferences(schemaDoc, schemaFile)) {
+                if (visited.add(reference.path)) {
+                    subtasks.add(new LoadTask(null, reference.path, loaded, visited));
                 }
             }
+            invokeAll(subtasks);
+        }
+    }
+    
+    private static final class SchemaReference {
+        final String path;
+        final boolean isImport;
+        
+        SchemaReference(String path, boolean isImport) {
+            this.path = path;
+            this.isImport = isImport;
+        }
+    }
+    
+    // Parsed document, or null if the file could not be parsed
+    private static final class LoadedSchema {
+        final Document document;
+        
+        LoadedSchema(Document document) {
+            this.document = document;
         }
     }
     
@@ -86,144 +184,459 @@ public class SchemaParser {
      * Find all global elements in the schema for reference resolution
      */
     public void findAllGlobalElements(Document schemaDoc) {
-        NodeList elements = schemaDoc.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "element");
-        for (int i = 0; i < elements.getLength(); i++) {
-            Element element = (Element) elements.item(i);
-            Node parent = element.getParentNode();
+        // Global declarations are direct children of xs:schema, so one pass over them finds all of them
+        for (Node child = schemaDoc.getDocumentElement().getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE
+                || !XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(child.getNamespaceURI())) {
+                continue;
+            }
+            Element declaration = (Element) child;
+            String name = declaration.getAttribute("name");
+            if (name.isEmpty()) {
+                continue;
+            }
             
-            // Check if this is a global element (direct child of schema)
-            if (parent != null &&
-                (parent.getLocalName().equals("schema") || parent.getNodeName().equals("xs:schema"))) {
-                String name = element.getAttribute("name");
-                if (!name.isEmpty()) {
-                    generator.getGlobalElementDefinitions().put(name, element);
-                    
-                    // Store child elements info
-                    List<ElementInfo> childElements = findChildElements(element);
-                    if (!childElements.isEmpty()) {
-                        generator.getGlobalElementsMap().put(name, childElements);
-                    }
+            switch (declaration.getLocalName()) {
+                case "element":
+                    // Child elements are resolved by buildModel, once all named types and groups are known
+                    globalElementDefinitions.put(name, declaration);
+                    break;
+                case "simpleType":
+                case "complexType":
+                    // Index all global simpleType and complexType definitions
+                    typeDefinitions.put(name, declaration);
+                    break;
+                case "group":
+                    groupDefinitions.put(name, declaration);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Build the read-only schema model from everything indexed by findAllGlobalElements
+     */
+    public SchemaModel buildModel(Map<String, String> namespaces, String defaultNamespacePrefix) {
+        // Store child elements info
+        for (Map.Entry<String, Element> entry : globalElementDefinitions.entrySet()) {
+            List<ElementInfo> childElements = findChildElements(entry.getValue());
+            if (!childElements.isEmpty()) {
+                globalElementsMap.put(entry.getKey(), childElements);
+            }
+        }
+        return new SchemaModel(namespaces, globalElementsMap, globalElementDefinitions,
+                               typeDefinitions, groupDefinitions, defaultNamespacePrefix);
+    }
+    
+    /**
+     * Find child elements for a given element, from every group of its content model.
+     * Occurrence ranges are effective ones: a child of an optional or repeated group, or of
+     * one alternative of a choice, gets the range it can actually have inside the element.
+     */
+    public List<ElementInfo> findChildElements(Element element) {
+        return flatten(compileParticle(element));
+    }
+    
+    private List<ElementInfo> flatten(Particle root) {
+        List<ElementInfo> childElements = new ArrayList<>();
+        if (root == null) {
+            return childElements;
+        }
+        // A child declared in several places is tested through its first declaration
+        Set<String> names = new HashSet<>();
+        for (Particle particle : root.elements()) {
+            if (names.add(particle.element.name)) {
+                ElementInfo childInfo = copyElementInfo(particle.element);
+                childInfo.minOccurs = root.minOccurrences(particle);
+                childInfo.maxOccurs = root.maxOccurrences(particle);
+                childElements.add(childInfo);
+            }
+        }
+        return childElements;
+    }
+    
+    /**
+     * Compile the content of an element declaration into a particle tree, or null if it has no element content.
+     * The complex type may be inline or named; group references and complexContent
+     * extensions and restrictions are resolved.
+     */
+    public Particle compileParticle(Element declaration) {
+        Element complexType = findComplexType(declaration);
+        return complexType != null ? compileType(complexType, new HashSet<>()) : null;
+    }
+    
+    /**
+     * Inline complex type of a declaration, or the named complex type it refers to
+     */
+    public Element findComplexType(Element declaration) {
+        Element complexType = generator.findChildElement(declaration, "complexType");
+        if (complexType == null && declaration.hasAttribute("type")) {
+            Element type = resolveTypeDefinition(localName(declaration.getAttribute("type")));
+            if (type != null && "complexType".equals(type.getLocalName())) {
+                complexType = type;
+            }
+        }
+        return complexType;
+    }
+    
+    // Types and groups being resolved are tracked so that circular derivations or group references end
+    private Particle compileType(Element complexType, Set<Element> resolving) {
+        Optional<Particle> compiled = compiledTypes.get(complexType);
+        if (compiled != null) {
+            return compiled.orElse(null);
+        }
+        if (!resolving.add(complexType)) {
+            return null;
+        }
+        Particle particle = null;
+        for (Element child : schemaChildren(complexType)) {
+            switch (child.getLocalName()) {
+                case "sequence":
+                case "choice":
+                case "all":
+                case "group":
+                    particle = compileGroup(child, resolving);
+                    break;
+                case "complexContent":
+                    particle = compileDerivation(child, resolving);
+                    break;
+                default:
+                    break;
+            }
+        }
+        resolving.remove(complexType);
+        compiledTypes.putIfAbsent(complexType, Optional.ofNullable(particle));
+        return particle;
+    }
+    
+    // An extension appends its own content to that of the base type; a restriction replaces it
+    private Particle compileDerivation(Element complexContent, Set<Element> resolving) {
+        for (Element derivation : schemaChildren(complexContent)) {
+            boolean extension = "extension".equals(derivation.getLocalName());
+            if (!extension && !"restriction".equals(derivation.getLocalName())) {
+                continue;
+            }
+            Particle own = null;
+            for (Element child : schemaChildren(derivation)) {
+                if (isGroup(child)) {
+                    own = compileGroup(child, resolving);
                 }
             }
+            if (!extension) {
+                return own;
+            }
+            Element base = resolveTypeDefinition(localName(derivation.getAttribute("base")));
+            Particle inherited = base != null && "complexType".equals(base.getLocalName()) ? compileType(base, resolving) : null;
+            if (inherited == null || own == null) {
+                return inherited != null ? inherited : own;
+            }
+            return Particle.group(Particle.Kind.SEQUENCE, 1, 1, Arrays.asList(inherited, own));
         }
-        // Index all global simpleType and complexType definitions
-        NodeList simpleTypes = schemaDoc.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "simpleType");
-        for (int i = 0; i < simpleTypes.getLength(); i++) {
-            Element typeElem = (Element) simpleTypes.item(i);
-            Node parent = typeElem.getParentNode();
-            if (parent != null &&
-                (parent.getLocalName().equals("schema") || parent.getNodeName().equals("xs:schema"))) {
-                String name = typeElem.getAttribute("name");
-                if (!name.isEmpty()) {
-                    typeDefinitions.put(name, typeElem);
+        return null;
+    }
+    
+    private Particle compileGroup(Element group, Set<Element> resolving) {
+        int min = parseOccurs(group.getAttribute("minOccurs"));
+        int max = parseOccurs(group.getAttribute("maxOccurs"));
+        if ("group".equals(group.getLocalName())) {
+            // A group reference takes the occurrence range of the reference and the content of the definition
+            Element definition = resolveGroupDefinition(localName(group.getAttribute("ref")));
+            if (definition == null || !resolving.add(definition)) {
+                return null;
+            }
+            Particle content = null;
+            for (Element child : schemaChildren(definition)) {
+                if (isGroup(child)) {
+                    content = compileGroup(child, resolving);
                 }
             }
+            resolving.remove(definition);
+            return content != null ? Particle.group(content.kind, min, max, content.particles) : null;
         }
-        NodeList complexTypes = schemaDoc.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "complexType");
-        for (int i = 0; i < complexTypes.getLength(); i++) {
-            Element typeElem = (Element) complexTypes.item(i);
-            Node parent = typeElem.getParentNode();
-            if (parent != null &&
-                (parent.getLocalName().equals("schema") || parent.getNodeName().equals("xs:schema"))) {
-                String name = typeElem.getAttribute("name");
-                if (!name.isEmpty()) {
-                    typeDefinitions.put(name, typeElem);
+        
+        List<Particle> particles = new ArrayList<>();
+        for (Element child : schemaChildren(group)) {
+            if ("element".equals(child.getLocalName())) {
+                particles.add(Particle.element(createElementInfo(child)));
+            } else if (isGroup(child)) {
+                Particle nested = compileGroup(child, resolving);
+                if (nested != null) {
+                    particles.add(nested);
                 }
             }
         }
+        return Particle.group(Particle.Kind.valueOf(group.getLocalName().toUpperCase(Locale.ROOT)), min, max, particles);
+    }
+    
+    private static boolean isGroup(Element element) {
+        switch (element.getLocalName()) {
+            case "sequence":
+            case "choice":
+            case "all":
+            case "group":
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    // Element info of a local element declaration or reference, with its own occurrence range
+    private ElementInfo createElementInfo(Element childElement) {
+        // Extract element info
+        String name = childElement.getAttribute("name");
+        String ref = childElement.getAttribute("ref");
+        
+        // Create element info
+        ElementInfo childInfo = new ElementInfo();
+        childInfo.name = !name.isEmpty() ? name : ref;
+        childInfo.isReference = !ref.isEmpty();
+        childInfo.minOccurs = parseOccurs(childElement.getAttribute("minOccurs"));
+        childInfo.maxOccurs = parseOccurs(childElement.getAttribute("maxOccurs"));
+        childInfo.declaration = childElement;
+        childInfo.isSimpleType = hasSimpleType(childElement);
+        return childInfo;
     }
     
     /**
-     * Find child elements for a given element
+     * True if the element declaration has a simple type, inline or named; false for references,
+     * which have the type of the declaration they refer to
      */
-    public List<ElementInfo> findChildElements(Element element) {
-        List<ElementInfo> childElements = new ArrayList<>();
-        
-        // Check for complex type
-        Element complexType = generator.findChildElement(element, "complexType");
+    public boolean hasSimpleType(Element declaration) {
+        // 1. Inline <simpleType> child
+        if (generator.findChildElement(declaration, "simpleType") != null) {
+            return true;
+        }
+        // 2. type attribute refers to a built-in XSD simple type or a named simple type
+        String typeAttr = declaration.getAttribute("type");
+        if (typeAttr.isEmpty()) {
+            return false;
+        }
+        // Accept both "xs:string" and "string" (with or without prefix)
+        String typeName = localName(typeAttr);
+        Element typeDef = resolveTypeDefinition(typeName);
+        return typeDef != null ? "simpleType".equals(typeDef.getLocalName()) : XSD_SIMPLE_TYPES.contains(typeName);
+    }
+    
+    private static ElementInfo copyElementInfo(ElementInfo source) {
+        ElementInfo copy = new ElementInfo();
+        copy.name = source.name;
+        copy.isReference = source.isReference;
+        copy.minOccurs = source.minOccurs;
+        copy.maxOccurs = source.maxOccurs;
+        copy.isSimpleType = source.isSimpleType;
+        copy.declaration = source.declaration;
+        return copy;
+    }
+    
+    // minOccurs or maxOccurs value; both default to 1
+    private static int parseOccurs(String value) {
+        return value.isEmpty() ? 1 : "unbounded".equals(value) ? Integer.MAX_VALUE : Integer.parseInt(value);
+    }
+    
+    private static String localName(String qualifiedName) {
+        return qualifiedName.contains(":") ? qualifiedName.substring(qualifiedName.indexOf(':') + 1) : qualifiedName;
+    }
+    
+    // Child elements in the XML Schema namespace, in document order
+    private static List<Element> schemaChildren(Element parent) {
+        List<Element> children = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                && XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(child.getNamespaceURI())) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+    
+    /**
+     * Get the resolved content model of an element declaration, analysing it on first use only
+     */
+    public ContentModel getContentModel(Element declaration) {
+        if (declaration == null) {
+            return ContentModel.EMPTY;
+        }
+        ContentModel model = contentModels.get(declaration);
+        if (model != null) {
+            generator.getMetrics().cacheHit("contentModels");
+            return model;
+        }
+        generator.getMetrics().cacheMiss("contentModels");
+        return contentModels.computeIfAbsent(declaration, this::buildContentModel);
+    }
+    
+    private ContentModel buildContentModel(Element declaration) {
+        Particle particle = compileParticle(declaration);
+        List<Element> attributes = new ArrayList<>();
+        Element complexType = findComplexType(declaration);
         if (complexType != null) {
-            // Look for sequence, choice, or all compositors
-            for (String compositor : new String[]{"sequence", "choice", "all"}) {
-                Element compositorElement = generator.findChildElement(complexType, compositor);
-                if (compositorElement != null) {
-                    // Find elements in this compositor
-                    NodeList elements = compositorElement.getElementsByTagNameNS(
-                            XMLConstants.W3C_XML_SCHEMA_NS_URI, "element");
-                    
-                    for (int i = 0; i < elements.getLength(); i++) {
-                        Element childElement = (Element) elements.item(i);
-                        
-                        // Skip if not direct child of compositor
-                        if (!childElement.getParentNode().equals(compositorElement)) {
-                            continue;
+            collectAttributes(complexType, attributes, new HashSet<>());
+        }
+        return new ContentModel(particle, flatten(particle), attributes);
+    }
+    
+    // Attributes declared by a complex type itself, including those inherited through complexContent
+    // or simpleContent extensions; attributes of nested local elements belong to those elements
+    private void collectAttributes(Element complexType, List<Element> attributes, Set<Element> resolving) {
+        if (!resolving.add(complexType)) {
+            return;
+        }
+        for (Element child : schemaChildren(complexType)) {
+            if ("attribute".equals(child.getLocalName())) {
+                addAttribute(child, attributes);
+            } else if ("complexContent".equals(child.getLocalName()) || "simpleContent".equals(child.getLocalName())) {
+                for (Element derivation : schemaChildren(child)) {
+                    if ("extension".equals(derivation.getLocalName())) {
+                        Element base = resolveTypeDefinition(localName(derivation.getAttribute("base")));
+                        if (base != null && "complexType".equals(base.getLocalName())) {
+                            collectAttributes(base, attributes, resolving);
                         }
-                        
-                        // Extract element info
-                        String name = childElement.getAttribute("name");
-                        String ref = childElement.getAttribute("ref");
-                        String minOccurs = childElement.getAttribute("minOccurs");
-                        String maxOccurs = childElement.getAttribute("maxOccurs");
-                        
-                        // Set defaults if not specified
-                        int min = minOccurs.isEmpty() ? 1 : Integer.parseInt(minOccurs);
-                        int max = maxOccurs.isEmpty() ? 1 : 
-                                  "unbounded".equals(maxOccurs) ? Integer.MAX_VALUE : 
-                                  Integer.parseInt(maxOccurs);
-                        
-                        // Create element info
-                        ElementInfo childInfo = new ElementInfo();
-                        childInfo.name = !name.isEmpty() ? name : ref;
-                        childInfo.isReference = !ref.isEmpty();
-                        childInfo.minOccurs = min;
-                        childInfo.maxOccurs = max;
-
-                        // Determine if this is a simple type
-                        // 1. Inline <simpleType> child
-                        Element simpleType = generator.findChildElement(childElement, "simpleType");
-                        if (simpleType != null) {
-                            childInfo.isSimpleType = true;
-                        } else {
-                            // 2. type attribute refers to built-in XSD simple type
-                            String typeAttr = childElement.getAttribute("type");
-                            if (!typeAttr.isEmpty()) {
-                                // Accept both "xs:string" and "string" (with or without prefix)
-                                String typeName = typeAttr.contains(":") ? typeAttr.split(":")[1] : typeAttr;
-                                Set<String> xsdSimpleTypes = new HashSet<>(Arrays.asList(
-                                    "string", "boolean", "decimal", "float", "double", "duration", "dateTime", "time",
-                                    "date", "gYearMonth", "gYear", "gMonthDay", "gDay", "gMonth", "hexBinary",
-                                    "base64Binary", "anyURI", "QName", "NOTATION", "normalizedString", "token",
-                                    "language", "IDREFS", "ENTITIES", "NMTOKEN", "NMTOKENS", "Name", "NCName",
-                                    "ID", "IDREF", "ENTITY", "integer", "nonPositiveInteger", "negativeInteger",
-                                    "long", "int", "short", "byte", "nonNegativeInteger", "unsignedLong",
-                                    "unsignedInt", "unsignedShort", "unsignedByte", "positiveInteger"
-                                ));
-                                childInfo.isSimpleType = xsdSimpleTypes.contains(typeName);
-                            } else {
-                                childInfo.isSimpleType = false;
-                            }
+                    }
+                    for (Element attribute : schemaChildren(derivation)) {
+                        if ("attribute".equals(attribute.getLocalName())) {
+                            addAttribute(attribute, attributes);
                         }
-                        
-                        childElements.add(childInfo);
                     }
-                    
-                    break; // Only process the first compositor found
                 }
             }
         }
+    }
+    
+    private static void addAttribute(Element attrElem, List<Element> attributes) {
+        String attrName = attrElem.getAttribute("name");
+        // Only add attribute if it is explicitly defined for this element
+        if (attrName == null || attrName.trim().isEmpty()) return;
+        attributes.add(attrElem);
+    }
+    
+    /**
+     * Compute a fingerprint of a global element for incremental regeneration: a SHA-256 hash
+     * over its declaration subtree, the subtrees of every global element and named type it
+     * depends on (through ref, name or type/base attributes, including named groups), and the namespace declarations
+     */
+    public String fingerprintElement(String elementName) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        SchemaModel model = generator.getSchemaModel();
+        update(digest, new TreeMap<>(model.getNamespaces()).toString());
+        update(digest, String.valueOf(model.getDefaultNamespacePrefix()));
+        
+        // Walk the dependency graph breadth-first; each declaration is hashed once
+        Set<String> visited = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add("element:" + elementName);
+        while (!pending.isEmpty()) {
+            String key = pending.poll();
+            if (!visited.add(key)) {
+                continue;
+            }
+            String name = key.substring(key.indexOf(':') + 1);
+            Element declaration = key.startsWith("element:") ? model.getGlobalElementDefinitions().get(name)
+                                : key.startsWith("group:") ? model.getGroupDefinitions().get(name)
+                                : model.getTypeDefinitions().get(name);
+            update(digest, key);
+            if (declaration != null) {
+                update(digest, declaration.getOwnerDocument().getDocumentElement().getAttribute("targetNamespace"));
+                serialize(declaration, digest, pending, model);
+            }
+        }
         
-        return childElements;
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+    
+    // Feed a canonical form of the subtree into the digest and queue the declarations it depends on
+    private void serialize(Node node, MessageDigest digest, Deque<String> dependencies, SchemaModel model) {
+        if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+            String text = node.getNodeValue().trim();
+            if (!text.isEmpty()) {
+                update(digest, text);
+            }
+            return;
+        }
+        if (node.getNodeType() != Node.ELEMENT_NODE) {
+            return;
+        }
+        Element element = (Element) node;
+        update(digest, "<{" + element.getNamespaceURI() + "}" + element.getLocalName());
+        
+        SortedMap<String, String> attributes = new TreeMap<>();
+        NamedNodeMap attributeNodes = element.getAttributes();
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            Node attr = attributeNodes.item(i);
+            attributes.put(attr.getNodeName(), attr.getNodeValue());
+        }
+        for (Map.Entry<String, String> attr : attributes.entrySet()) {
+            update(digest, " " + attr.getKey() + "=" + attr.getValue());
+            String value = attr.getValue();
+            String localValue = value.contains(":") ? value.substring(value.indexOf(':') + 1) : value;
+            switch (attr.getKey()) {
+                case "ref":
+                case "name":
+                    // Local declarations fall back to a global element of the same name
+                    if ("element".equals(element.getLocalName()) && model.getGlobalElementDefinitions().containsKey(localValue)) {
+                        dependencies.add("element:" + localValue);
+                    } else if ("group".equals(element.getLocalName()) && attr.getKey().equals("ref")
+                               && model.getGroupDefinitions().containsKey(localValue)) {
+                        dependencies.add("group:" + localValue);
+                    }
+                    break;
+                case "type":
+                case "base":
+                    if (model.getTypeDefinitions().containsKey(localValue)) {
+                        dependencies.add("type:" + localValue);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        update(digest, ">");
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            serialize(child, digest, dependencies, model);
+        }
+        update(digest, "</>");
+    }
+    
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
     }
     
     /**
-     * Find enumeration values for an element or attribute
+     * Find enumeration values for an element or attribute.
+     * Results are cached per declaration node, so each declaration is scanned once per run
+     * and declarations sharing a name (e.g. two attributes called type) stay separate.
      */
     public List<String> findEnumerationValues(Element element) {
-        // Check cache first
-        String elementId = element.getAttribute("name");
-        if (generator.getEnumValueCache().containsKey(elementId)) {
-            return generator.getEnumValueCache().get(elementId);
+        List<String> values = enumValueCache.get(element);
+        if (values != null) {
+            generator.getMetrics().cacheHit("enumerations");
+            return values;
         }
-        
+        // Only the caller that scans counts a miss; concurrent callers losing the race get a hit
+        boolean[] scanned = new boolean[1];
+        values = enumValueCache.computeIfAbsent(element, key -> {
+            scanned[0] = true;
+            generator.getMetrics().cacheMiss("enumerations");
+            return scanEnumerationValues(key);
+        });
+        if (!scanned[0]) {
+            generator.getMetrics().cacheHit("enumerations");
+        }
+        return values;
+    }
+    
+    private List<String> scanEnumerationValues(Element element) {
         List<String> values = new ArrayList<>();
         
         // Check for inline simple type with enumerations
@@ -261,18 +674,23 @@ public class SchemaParser {
                 }
             }
         }
-        
-        // Cache the results
-        if (!elementId.isEmpty()) {
-            generator.getEnumValueCache().put(elementId, values);
-        }
-        return values;
+        return Collections.unmodifiableList(values);
     }
 
+    // Resolve a group name to its xs:group definition
+    public Element resolveGroupDefinition(String groupName) {
+        SchemaModel model = generator.getSchemaModel();
+        Map<String, Element> groups = model != null ? model.getGroupDefinitions() : groupDefinitions;
+        return groups.get(groupName);
+    }
+    
     // Resolve a type name to its global type definition element
     public Element resolveTypeDefinition(String typeName) {
-        if (typeDefinitions.containsKey(typeName)) {
-            return typeDefinitions.get(typeName);
+        // Prefer the frozen model so parsers that did not index the schema still resolve types
+        SchemaModel model = generator.getSchemaModel();
+        Map<String, Element> types = model != null ? model.getTypeDefinitions() : typeDefinitions;
+        if (types.containsKey(typeName)) {
+            return types.get(typeName);
         }
         return null;
     }
@@ -0,0 +1,244 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Compact binary snapshot of a resolved schema model.
+ * Holds the namespaces, global elements with their children and occurrence bounds, and
+ * the fingerprint of every global element: what a run with nothing to regenerate needs.
+ * It is keyed by the canonical paths and content digests of every file in the include/import
+ * closure, so a warm start from any working directory can check it is still current and use
+ * it without parsing any schema DOM.
+ */
+public final class SchemaSnapshot {
+
+    private static final int MAGIC = 0x58535453; // "XSTS"
+    private static final int VERSION = 2;
+
+    private final Map<String, String> sourceDigests;
+    private final String defaultNamespacePrefix;
+    private final Map<String, String> namespaces;
+    private final Map<String, String> elementFingerprints;
+    private final Map<String, List<ElementInfo>> globalElements;
+
+    private SchemaSnapshot(Map<String, String> sourceDigests, String defaultNamespacePrefix, Map<String, String> namespaces,
+                           Map<String, String> elementFingerprints, Map<String, List<ElementInfo>> globalElements) {
+        this.sourceDigests = sourceDigests;
+        this.defaultNamespacePrefix = defaultNamespacePrefix;
+        this.namespaces = namespaces;
+        this.elementFingerprints = elementFingerprints;
+        this.globalElements = globalElements;
+    }
+
+    /**
+     * Capture a freshly built model together with the digests of the schema files it was built from
+     */
+    public static SchemaSnapshot capture(SchemaModel model, SchemaParser parser, Collection<String> schemaFiles)
+            throws IOException {
+        Map<String, String> digests = new LinkedHashMap<>();
+        for (String file : schemaFiles) {
+            digests.put(new File(file).getCanonicalPath(), digest(file));
+        }
+
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        for (String elementName : model.getGlobalElementDefinitions().keySet()) {
+            fingerprints.put(elementName, parser.fingerprintElement(elementName));
+        }
+
+        return new SchemaSnapshot(digests, model.getDefaultNamespacePrefix(), model.getNamespaces(),
+                                  fingerprints, model.getGlobalElements());
+    }
+
+    /**
+     * Read a snapshot by memory-mapping the file, or return null if there is none, it has
+     * another format or it cannot be read completely, so that the schema is loaded in full
+     */
+    public static SchemaSnapshot read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            Map<String, String> digests = readStringMap(buffer);
+            String defaultPrefix = readString(buffer);
+            Map<String, String> namespaces = readStringMap(buffer);
+            Map<String, String> fingerprints = readStringMap(buffer);
+
+            Map<String, List<ElementInfo>> elements = new LinkedHashMap<>();
+            int elementCount = readCount(buffer);
+            for (int e = 0; e < elementCount; e++) {
+                String name = readString(buffer);
+                int childCount = readCount(buffer);
+                List<ElementInfo> children = new ArrayList<>(childCount);
+                for (int c = 0; c < childCount; c++) {
+                    ElementInfo info = new ElementInfo();
+                    info.name = readString(buffer);
+                    byte flags = buffer.get();
+                    info.isReference = (flags & 1) != 0;
+                    info.isSimpleType = (flags & 2) != 0;
+                    info.minOccurs = buffer.getInt();
+                    info.maxOccurs = buffer.getInt();
+                    children.add(info);
+                }
+                elements.put(name, children);
+            }
+            return new SchemaSnapshot(digests, defaultPrefix, namespaces, fingerprints, elements);
+        } catch (IOException | RuntimeException e) {
+            // Truncated or corrupt snapshot; treat it as missing
+            Log.warn("Ignoring unreadable snapshot " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Write the snapshot; it is written to a temporary file first so readers never see a partial one
+     */
+    public void write(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeStringMap(out, sourceDigests);
+        writeString(out, defaultNamespacePrefix);
+        writeStringMap(out, namespaces);
+        writeStringMap(out, elementFingerprints);
+
+        out.writeInt(globalElements.size());
+        for (Map.Entry<String, List<ElementInfo>> entry : globalElements.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (ElementInfo info : entry.getValue()) {
+                writeString(out, info.name);
+                out.writeByte((info.isReference ? 1 : 0) | (info.isSimpleType ? 2 : 0));
+                out.writeInt(info.minOccurs);
+                out.writeInt(info.maxOccurs);
+            }
+        }
+        out.flush();
+
+        File temp = new File(file.getPath() + ".tmp");
+        Files.write(temp.toPath(), bytes.toByteArray());
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * True if every schema file the snapshot was built from still has the same content
+     */
+    public boolean isCurrent() {
+        try {
+            for (Map.Entry<String, String> entry : sourceDigests.entrySet()) {
+                if (!new File(entry.getKey()).isFile() || !entry.getValue().equals(digest(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * True if the other snapshot was built from the same schema contents and has the same
+     * element fingerprints, so writing this one over it would change nothing
+     */
+    public boolean hasSameFingerprints(SchemaSnapshot other) {
+        return other != null && sourceDigests.equals(other.sourceDigests)
+            && elementFingerprints.equals(other.elementFingerprints);
+    }
+
+    /**
+     * Schema model without DOM declarations, for runs that have nothing to regenerate
+     */
+    public SchemaModel toModel() {
+        return new SchemaModel(namespaces, globalElements, Collections.emptyMap(), Collections.emptyMap(),
+                               Collections.emptyMap(), defaultNamespacePrefix);
+    }
+
+    public Set<String> getSchemaFiles() {
+        return Collections.unmodifiableSet(sourceDigests.keySet());
+    }
+
+    /**
+     * Fingerprints of all global elements, in declaration order
+     */
+    public Map<String, String> getElementFingerprints() {
+        return Collections.unmodifiableMap(elementFingerprints);
+    }
+
+    private static String digest(String file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(Files.readAllBytes(new File(file).toPath()));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Strings are stored as a UTF-8 byte count followed by the bytes; -1 stands for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStringMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    // Number of entries that follow; every entry takes at least four bytes
+    private static int readCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static Map<String, String> readStringMap(ByteBuffer buffer) {
+        int size = readCount(buffer);
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(readString(buffer), readString(buffer));
+        }
+        return map;
+    }
+}
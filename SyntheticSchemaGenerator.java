@@ -0,0 +1,217 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes synthetic XML schema bundles of configurable size for benchmarks and scale tests.
+ * Every global element has a simple id, up to three references to a global enumerated
+ * element, an optional xs:choice group and a repeated item nested the given number of
+ * levels deep. Global elements can be spread over a graph of included schema files, and
+ * imported schemas in their own namespaces can be referenced from them.
+ *
+ * Usage: java SyntheticSchemaGenerator [--elements n] [--depth n] [--choice n] [--enums n]
+ *                                      [--includes n] [--imports n] <output-dir>
+ */
+public class SyntheticSchemaGenerator {
+
+    static final String NAMESPACE = "http://example.com/synthetic";
+    static final String PREFIX = "sy";
+
+    private int globalElements = 100;
+    private int depth = 3;
+    private int choiceWidth = 0;
+    private int enumValues = 5;
+    private int includes = 0;
+    private int imports = 0;
+
+    public SyntheticSchemaGenerator() {
+    }
+
+    public SyntheticSchemaGenerator(int globalElements, int depth) {
+        this.globalElements = globalElements;
+        this.depth = depth;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java SyntheticSchemaGenerator [--elements n] [--depth n] [--choice n] [--enums n] [--includes n] [--imports n] <output-dir>");
+            System.exit(1);
+        }
+        SyntheticSchemaGenerator generator = new SyntheticSchemaGenerator();
+        // Options come in pairs before the output directory
+        for (int i = 0; i + 1 < args.length - 1; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            if ("--elements".equals(args[i])) {
+                generator.setGlobalElements(value);
+            } else if ("--depth".equals(args[i])) {
+                generator.setDepth(value);
+            } else if ("--choice".equals(args[i])) {
+                generator.setChoiceWidth(value);
+            } else if ("--enums".equals(args[i])) {
+                generator.setEnumValues(value);
+            } else if ("--includes".equals(args[i])) {
+                generator.setIncludes(value);
+            } else if ("--imports".equals(args[i])) {
+                generator.setImports(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        File schema = generator.write(new File(args[args.length - 1]));
+        System.out.println("Synthetic schema written to " + schema.getPath());
+    }
+
+    /**
+     * Write the schema bundle into the given directory and return its root schema file
+     */
+    public File write(File directory) throws IOException {
+        directory.mkdirs();
+        String baseName = "synthetic_" + globalElements + "_" + depth
+            + (choiceWidth > 0 || enumValues != 5 || includes > 0 || imports > 0
+               ? "_c" + choiceWidth + "_e" + enumValues + "_i" + includes + "_m" + imports : "");
+
+        // Global elements are dealt round-robin over the root (index 0) and the included files
+        List<List<Integer>> elementsByFile = new ArrayList<>();
+        for (int f = 0; f <= includes; f++) {
+            elementsByFile.add(new ArrayList<>());
+        }
+        for (int e = 0; e < globalElements; e++) {
+            elementsByFile.get(e % (includes + 1)).add(e);
+        }
+
+        for (int k = 0; k < imports; k++) {
+            writeImportedSchema(new File(directory, baseName + "_ns" + k + ".xsd"), k);
+        }
+        for (int f = 1; f <= includes; f++) {
+            writeSchemaFile(new File(directory, baseName + "_part" + f + ".xsd"), baseName, f, elementsByFile.get(f));
+        }
+        File root = new File(directory, baseName + ".xsd");
+        writeSchemaFile(root, baseName, 0, elementsByFile.get(0));
+        return root;
+    }
+
+    // One file of the target namespace; file 0 is the root and holds the shared code type
+    private void writeSchemaFile(File file, String baseName, int index, List<Integer> elements) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" xmlns:" + PREFIX + "=\"" + NAMESPACE + "\"");
+            for (int k = 0; k < imports; k++) {
+                out.write("\n           xmlns:" + importPrefix(k) + "=\"" + importNamespace(k) + "\"");
+            }
+            out.write("\n           targetNamespace=\"" + NAMESPACE + "\" elementFormDefault=\"qualified\">\n\n");
+
+            // Include graph: file i includes files 2i+1 and 2i+2 (a tree) and i+1 (a second path to most files)
+            Set<Integer> included = new TreeSet<>(Arrays.asList(2 * index + 1, 2 * index + 2, index + 1));
+            for (int target : included) {
+                if (target >= 1 && target <= includes) {
+                    out.write("  <xs:include schemaLocation=\"" + baseName + "_part" + target + ".xsd\"/>\n");
+                }
+            }
+            for (int k = 0; k < imports; k++) {
+                out.write("  <xs:import namespace=\"" + importNamespace(k) + "\" schemaLocation=\"" + baseName + "_ns" + k + ".xsd\"/>\n");
+            }
+            out.write("\n");
+
+            if (index == 0) {
+                writeEnumeratedType(out, "CodeType", "code");
+                out.write("  <xs:element name=\"code\" type=\"" + PREFIX + ":CodeType\"/>\n\n");
+            }
+            for (int e : elements) {
+                writeGlobalElement(out, "element" + e, e);
+            }
+            out.write("</xs:schema>\n");
+        }
+    }
+
+    private void writeImportedSchema(File file, int k) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" xmlns:" + importPrefix(k) + "=\"" + importNamespace(k) + "\"\n");
+            out.write("           targetNamespace=\"" + importNamespace(k) + "\" elementFormDefault=\"qualified\">\n\n");
+            writeEnumeratedType(out, "ExternalType" + k, "external" + k);
+            out.write("  <xs:element name=\"external" + k + "\" type=\"" + importPrefix(k) + ":ExternalType" + k + "\"/>\n");
+            out.write("</xs:schema>\n");
+        }
+    }
+
+    private void writeEnumeratedType(Writer out, String typeName, String valuePrefix) throws IOException {
+        out.write("  <xs:simpleType name=\"" + typeName + "\">\n");
+        out.write("    <xs:restriction base=\"xs:string\">\n");
+        for (int i = 0; i < enumValues; i++) {
+            out.write("      <xs:enumeration value=\"" + valuePrefix + "_" + i + "\"/>\n");
+        }
+        out.write("    </xs:restriction>\n");
+        out.write("  </xs:simpleType>\n\n");
+    }
+
+    private void writeGlobalElement(Writer out, String name, int index) throws IOException {
+        out.write("  <xs:element name=\"" + name + "\">\n");
+        out.write("    <xs:complexType>\n");
+        out.write("      <xs:sequence>\n");
+        out.write("        <xs:element name=\"" + name + "_id\" type=\"xs:string\"/>\n");
+        out.write("        <xs:element ref=\"" + PREFIX + ":code\" minOccurs=\"0\" maxOccurs=\"3\"/>\n");
+        if (imports > 0) {
+            int k = index % imports;
+            out.write("        <xs:element ref=\"" + importPrefix(k) + ":external" + k + "\" minOccurs=\"0\"/>\n");
+        }
+        if (choiceWidth > 0) {
+            out.write("        <xs:choice>\n");
+            for (int c = 0; c < choiceWidth; c++) {
+                out.write("          <xs:element name=\"" + name + "_option" + c + "\" type=\"xs:string\"/>\n");
+            }
+            out.write("        </xs:choice>\n");
+        }
+        writeNestedItem(out, name + "_item", 1, "        ");
+        out.write("      </xs:sequence>\n");
+        out.write("    </xs:complexType>\n");
+        out.write("  </xs:element>\n\n");
+    }
+
+    // An item that repeats up to ten times and contains the next level until the depth is reached
+    private void writeNestedItem(Writer out, String name, int level, String indent) throws IOException {
+        if (level >= depth) {
+            out.write(indent + "<xs:element name=\"" + name + "\" type=\"xs:string\" maxOccurs=\"10\"/>\n");
+            return;
+        }
+        out.write(indent + "<xs:element name=\"" + name + "\" maxOccurs=\"10\">\n");
+        out.write(indent + "  <xs:complexType>\n");
+        out.write(indent + "    <xs:sequence>\n");
+        out.write(indent + "      <xs:element name=\"" + name + "_label\" type=\"xs:string\"/>\n");
+        writeNestedItem(out, name + "_" + (level + 1), level + 1, indent + "      ");
+        out.write(indent + "    </xs:sequence>\n");
+        out.write(indent + "  </xs:complexType>\n");
+        out.write(indent + "</xs:element>\n");
+    }
+
+    private static String importPrefix(int k) {
+        return "ext" + k;
+    }
+
+    private static String importNamespace(int k) {
+        return NAMESPACE + "/external" + k;
+    }
+
+    public void setGlobalElements(int globalElements) {
+        this.globalElements = globalElements;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public void setChoiceWidth(int choiceWidth) {
+        this.choiceWidth = choiceWidth;
+    }
+
+    public void setEnumValues(int enumValues) {
+        this.enumValues = enumValues;
+    }
+
+    public void setIncludes(int includes) {
+        this.includes = includes;
+    }
+
+    public void setImports(int imports) {
+        this.imports = imports;
+    }
+}
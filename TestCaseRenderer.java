@@ -0,0 +1,8 @@
+import java.io.OutputStream;
+
+/**
+ * Callback that streams one generated test document to an output stream
+ */
+public interface TestCaseRenderer {
+    void render(OutputStream out) throws Exception;
+}
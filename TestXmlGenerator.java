@@ -1,6 +1,15 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 /**
  * Class for generating XML test files
@@ -10,96 +19,328 @@ public class TestXmlGenerator {
     private XMLSchemaTestGenerator generator;
     private SchemaParser schemaParser;
     private XmlValueHelper xmlValueHelper;
+    private InstanceExpansion expansion;
+    // Largest instance kept as a template; bigger instances are rendered straight to the output every time
+    static final int MAX_TEMPLATE_CHARS = 64 * 1024;
+    // Total size of all cached templates; once reached, further templates are rendered but not kept
+    static final long MAX_CACHED_TEMPLATE_CHARS = 16L * 1024 * 1024;
+    
+    // Rendered markup of one complete instance per element declaration, reused across occurrences and test cases
+    private final Map<TemplateKey, String> instanceTemplates = new ConcurrentHashMap<>();
+    private final AtomicLong cachedTemplateChars = new AtomicLong();
+    // Instances known to be bigger than a template may be
+    private final Set<TemplateKey> oversizedInstances = ConcurrentHashMap.newKeySet();
     
     public TestXmlGenerator(XMLSchemaTestGenerator generator, SchemaParser schemaParser) {
+        this(generator, schemaParser, new XmlValueHelper(schemaParser), new InstanceExpansion(generator, schemaParser));
+    }
+    
+    public TestXmlGenerator(XMLSchemaTestGenerator generator, SchemaParser schemaParser, XmlValueHelper xmlValueHelper,
+                            InstanceExpansion expansion) {
         this.generator = generator;
         this.schemaParser = schemaParser;
-        this.xmlValueHelper = new XmlValueHelper(schemaParser);
+        this.xmlValueHelper = xmlValueHelper;
+        this.expansion = expansion;
+    }
+    
+    /**
+     * Generate XML for testing cardinality constraints
+     */
+    public String generateTestXml(String parentName, List<ElementInfo> allChildElements,
+                                  String targetChildName, int occurrences, boolean isReference, String namespace, Element parentSchemaElement) {
+        long start = System.nanoTime();
+        StringWriter out = new StringWriter();
+        try {
+            writeTestXml(new InstanceWriter(out), parentName, targetChildName, occurrences, namespace, parentSchemaElement,
+                         this::writeCompleteInstances, Collections.emptyMap());
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Could not generate XML for " + parentName, e);
+        }
+        String result = out.toString();
+        generator.getMetrics().record(RunMetrics.RENDER, start);
+        return result;
+    }
+    
+    /**
+     * Stream XML for testing cardinality constraints as UTF-8 to the given output,
+     * without building the document in memory first
+     */
+    public void writeTestXml(OutputStream out, String parentName, List<ElementInfo> allChildElements,
+                             String targetChildName, int occurrences, boolean isReference, String namespace,
+                             Element parentSchemaElement) throws XMLStreamException {
+        long start = System.nanoTime();
+        writeTestXml(new InstanceWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), parentName, targetChildName,
+                     occurrences, namespace, parentSchemaElement, this::writeCompleteInstances, Collections.emptyMap());
+        generator.getMetrics().record(RunMetrics.RENDER, start);
+    }
+    
+    /**
+     * Writes the occurrences of the target element of a case
+     */
+    private interface TargetWriter {
+        void write(InstanceWriter out, ElementInfo target, int count, String namespace) throws XMLStreamException;
+    }
+    
+    private void writeCompleteInstances(InstanceWriter out, ElementInfo target, int count, String namespace) throws XMLStreamException {
+        addCompleteElementInstance(out, target.name, target.isReference, count, namespace, target.declaration);
+    }
+    
+    /**
+     * Write a test document: the root with its attributes, the given ones replacing the generated
+     * values, and its content, in which the target child occurs the given number of times
+     */
+    private void writeTestXml(InstanceWriter out, String parentName, String targetChildName, int occurrences,
+                              String namespace, Element parentSchemaElement, TargetWriter targetWriter,
+                              Map<String, String> rootAttributes) throws XMLStreamException {
+        XMLStreamWriter xml = out.xml();
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeCharacters("\n");
+        
+        // Add root element with namespace declarations
+        if (namespace != null && !namespace.isEmpty()) {
+            xml.writeStartElement(qualifiedName(rootPrefix(parentName), parentName));
+            
+            // Add all namespace declarations
+            for (Map.Entry<String, String> entry : generator.getNamespaceMap().entrySet()) {
+                xml.writeNamespace(entry.getKey(), entry.getValue());
+            }
+        } else {
+            xml.writeStartElement(parentName);
+        }
+        ContentModel model = schemaParser.getContentModel(parentSchemaElement);
+        for (Map.Entry<String, String> attribute : attributeValues(model, rootAttributes).entrySet()) {
+            xml.writeAttribute(attribute.getKey(), attribute.getValue());
+        }
+        xml.writeCharacters("\n");
+        
+        // Add child elements following the compiled content model of the parent
+        Particle content = model.getParticle();
+        if (content != null) {
+            // Plan the expansion of everything below the parent before choosing alternatives
+            expansion.getPlan(parentSchemaElement);
+            writeParticle(out, content, content.findElement(targetChildName), occurrences, namespace, targetWriter);
+        }
+        
+        // Close parent element
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndDocument();
+        out.flush();
     }
     
     /**
-     /**
-      * Generate XML for testing cardinality constraints
-      */
-     public String generateTestXml(String parentName, List<ElementInfo> allChildElements,
-                                   String targetChildName, int occurrences, boolean isReference, String namespace, Element parentSchemaElement) {
-         StringBuilder xml = new StringBuilder();
-         xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-         
-         // Extract prefix and local name
-         String parentPrefix = generator.getDefaultNamespacePrefix();
-         
-         // Add root element with namespace declarations
-         if (namespace != null && !namespace.isEmpty()) {
-             xml.append("<").append(parentPrefix).append(":").append(parentName);
-             
-             // Add all namespace declarations
-             for (Map.Entry<String, String> entry : generator.getNamespaceMap().entrySet()) {
-                 xml.append(" xmlns:").append(entry.getKey())
-                    .append("=\"").append(entry.getValue()).append("\"");
-             }
-             
-             xml.append(">\n");
-         } else {
-             xml.append("<").append(parentName).append(">\n");
-         }
-         
-         // Add child elements in the required sequence
-         for (ElementInfo childInfo : allChildElements) {
-             String childName = childInfo.name;
-             // Find the schemaElement for this child
-             Element childSchemaElement = null;
-             if (parentSchemaElement != null) {
-                 Element complexType = generator.findChildElement(parentSchemaElement, "complexType");
-                 if (complexType != null) {
-                     Element sequence = generator.findChildElement(complexType, "sequence");
-                     if (sequence != null) {
-                         org.w3c.dom.NodeList elements = sequence.getElementsByTagNameNS(javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI, "element");
-                         for (int i = 0; i < elements.getLength(); i++) {
-                             Element el = (Element) elements.item(i);
-                             String name = el.getAttribute("name");
-                             String ref = el.getAttribute("ref");
-                             if ((!name.isEmpty() && name.equals(childName)) || (!ref.isEmpty() && ref.equals(childName))) {
-                                 childSchemaElement = el;
-                                 break;
-                             }
-                         }
-                     }
-                 }
-             }
-             // Fallback to global element definition if not found inline
-             if (childSchemaElement == null && generator.getGlobalElementDefinitions().containsKey(childName)) {
-                 childSchemaElement = generator.getGlobalElementDefinitions().get(childName);
-             }
-             
-             // Skip elements we're not testing in this case and maintain the right sequence
-             if (!childName.equals(targetChildName)) {
-                 // Add a single instance of non-target elements to satisfy minimum requirements
-                 if (childInfo.minOccurs > 0) {
-                     addCompleteElementInstance(xml, childName, childInfo.isReference, 1, namespace, childSchemaElement);
-                 }
-                 continue;
-             }
-             
-             // For the target element, add the specified number of occurrences
-             addCompleteElementInstance(xml, childName, isReference, occurrences, namespace, childSchemaElement);
-         }
-         
-         // Close parent element
-         if (namespace != null && !namespace.isEmpty()) {
-             xml.append("</").append(parentPrefix).append(":").append(parentName).append(">\n");
-         } else {
-             xml.append("</").append(parentName).append(">\n");
-         }
-         
-         return xml.toString();
-     }
+     * Write one particle of a cardinality case: the target element occurs the given number of
+     * times in total, everything else only as often as the content model requires
+     */
+    private void writeParticle(InstanceWriter out, Particle particle, Particle target, int occurrences,
+                               String namespace, TargetWriter targetWriter) throws XMLStreamException {
+        if (particle.kind == Particle.Kind.ELEMENT) {
+            if (particle == target) {
+                targetWriter.write(out, particle.element, occurrences, namespace);
+            } else {
+                writeCompleteInstances(out, particle.element, particle.minOccurs, namespace);
+            }
+            return;
+        }
+        if (target == null) {
+            for (int i = 0; i < particle.minOccurs; i++) {
+                writeGroupContent(out, particle, null, 0, namespace, targetWriter);
+            }
+            return;
+        }
+        // Spread the occurrences evenly over as few repetitions of the group as its content allows;
+        // more than the group's maxOccurs allows are put into its last allowed repetitions
+        int perRepetition = particle.maxContentOccurrences(target);
+        int repetitions = occurrences == 0 || perRepetition == Integer.MAX_VALUE ? Math.min(occurrences, 1)
+                        : (occurrences + perRepetition - 1) / perRepetition;
+        repetitions = Math.min(Math.max(repetitions, particle.minOccurs), particle.maxOccurs);
+        for (int i = 0; i < repetitions; i++) {
+            int share = occurrences / repetitions + (i < occurrences % repetitions ? 1 : 0);
+            writeGroupContent(out, particle, target, share, namespace, targetWriter);
+        }
+    }
+    
+    // One repetition of a group; only the particle holding the target gets occurrences
+    private void writeGroupContent(InstanceWriter out, Particle group, Particle target, int occurrences,
+                                   String namespace, TargetWriter targetWriter) throws XMLStreamException {
+        if (group.kind == Particle.Kind.CHOICE) {
+            Particle chosen = chooseAlternative(group, target);
+            if (chosen != null) {
+                writeParticle(out, chosen, target, occurrences, namespace, targetWriter);
+            }
+            return;
+        }
+        for (Particle particle : group.particles) {
+            boolean holdsTarget = target != null && particle.contains(target);
+            writeParticle(out, particle, holdsTarget ? target : null, holdsTarget ? occurrences : 0, namespace, targetWriter);
+        }
+    }
+    
+    // The alternative of a choice that holds the target, otherwise the one with the shallowest instance
+    private Particle chooseAlternative(Particle choice, Particle target) {
+        for (Particle alternative : choice.particles) {
+            if (target != null && alternative.contains(target)) {
+                return alternative;
+            }
+        }
+        return expansion.shallowestAlternative(choice);
+    }
+    
+    // Prefix of the namespace a global element is declared in, or the default prefix
+    private String rootPrefix(String elementName) {
+        String defaultPrefix = generator.getDefaultNamespacePrefix();
+        Element declaration = generator.getGlobalElementDefinitions().get(elementName);
+        if (declaration == null) {
+            return defaultPrefix;
+        }
+        String targetNamespace = declaration.getOwnerDocument().getDocumentElement().getAttribute("targetNamespace");
+        Map<String, String> namespaces = generator.getNamespaceMap();
+        if (targetNamespace.equals(namespaces.get(defaultPrefix))) {
+            return defaultPrefix;
+        }
+        for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+            if (entry.getValue().equals(targetNamespace)) {
+                return entry.getKey();
+            }
+        }
+        return defaultPrefix;
+    }
+    
+    // Generated values of the attributes of a content model, with the given values replacing them
+    private Map<String, String> attributeValues(ContentModel model, Map<String, String> overrides) {
+        Map<String, String> attributeValues = new LinkedHashMap<>();
+        for (Element attrElem : model.getAttributes()) {
+            attributeValues.put(attrElem.getAttribute("name"), xmlValueHelper.getAttributeValue(attrElem));
+        }
+        attributeValues.putAll(overrides);
+        return attributeValues;
+    }
+    
+    // Build a prefixed element name, leaving it unprefixed when there is no prefix
+    private String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+    
     /**
-     * Add complete element instances with appropriate structure based on element name
+     * Add complete element instances with appropriate structure based on element name.
+     * All occurrences are identical, so one instance is rendered once per declaration
+     * and copied for every repetition. How far it is expanded depends only on the
+     * declaration (see InstanceExpansion), so recursive types terminate and their
+     * shortest instances are rendered once as well. Instances larger than
+     * MAX_TEMPLATE_CHARS are not kept; they are rendered to the output for every
+     * occurrence, from the templates of their smaller parts.
      */
     // Updated to accept schemaElement for correct reference resolution
-    public void addCompleteElementInstance(StringBuilder xml, String elementName, boolean isReference,
-                                           int count, String namespace, Element schemaElement) {
+    public void addCompleteElementInstance(InstanceWriter out, String elementName, boolean isReference,
+                                           int count, String namespace, Element schemaElement) throws XMLStreamException {
+        // Nothing to render for zero occurrences (e.g. lessThanMin cases)
+        if (count <= 0) {
+            return;
+        }
+        
+        TemplateKey key = new TemplateKey(elementName, isReference, namespace, schemaElement);
+        String template = instanceTemplates.get(key);
+        if (template != null) {
+            generator.getMetrics().cacheHit("instanceTemplates");
+            out.writeRaw(template, count);
+            return;
+        }
+        generator.getMetrics().cacheMiss("instanceTemplates");
+        int remaining = count;
+        if (!oversizedInstances.contains(key)) {
+            TemplateBuffer buffer = new TemplateBuffer(out.writer());
+            InstanceWriter templateWriter = new InstanceWriter(buffer);
+            renderElementInstance(templateWriter, elementName, isReference, namespace, schemaElement, Collections.emptyMap());
+            templateWriter.flush();
+            template = buffer.getTemplate();
+            if (template != null) {
+                cacheTemplate(key, template);
+                out.writeRaw(template, count);
+                return;
+            }
+            // The first occurrence went to the output as it grew too big
+            oversizedInstances.add(key);
+            remaining--;
+        }
+        for (int i = 0; i < remaining; i++) {
+            renderElementInstance(out, elementName, isReference, namespace, schemaElement, Collections.emptyMap());
+        }
+    }
+    
+    private void cacheTemplate(TemplateKey key, String template) {
+        if (cachedTemplateChars.addAndGet(template.length()) > MAX_CACHED_TEMPLATE_CHARS) {
+            cachedTemplateChars.addAndGet(-template.length());
+            return;
+        }
+        // Rendering is deterministic, so a concurrently rendered copy is identical
+        if (instanceTemplates.putIfAbsent(key, template) != null) {
+            cachedTemplateChars.addAndGet(-template.length());
+        }
+    }
+    
+    /**
+     * Collects a rendered instance as a template until it exceeds MAX_TEMPLATE_CHARS,
+     * then hands what it has and everything after it on to the output
+     */
+    private static final class TemplateBuffer extends Writer {
+        private final Writer output;
+        private StringBuilder template = new StringBuilder();
+        
+        TemplateBuffer(Writer output) {
+            this.output = output;
+        }
+        
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            if (template != null && template.length() + length > MAX_TEMPLATE_CHARS) {
+                output.append(template);
+                template = null;
+            }
+            if (template != null) {
+                template.append(chars, offset, length);
+            } else {
+                output.write(chars, offset, length);
+            }
+        }
+        
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            if (template != null && template.length() + length > MAX_TEMPLATE_CHARS) {
+                output.append(template);
+                template = null;
+            }
+            if (template != null) {
+                template.append(text, offset, offset + length);
+            } else {
+                output.write(text, offset, length);
+            }
+        }
+        
+        // The output is flushed by its own writer
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+        
+        /**
+         * The complete instance, or null if it was too big and went to the output
+         */
+        String getTemplate() {
+            return template != null ? template.toString() : null;
+        }
+    }
+    
+    /**
+     * Render a single complete instance of an element, with the given attribute values
+     * replacing the generated ones
+     */
+    private void renderElementInstance(InstanceWriter out, String elementName, boolean isReference, String namespace,
+                                       Element schemaElement, Map<String, String> attributes) throws XMLStreamException {
+        XMLStreamWriter xml = out.xml();
+        
         // Extract prefix and local name
         String prefix = generator.getDefaultNamespacePrefix();
         String localName = elementName;
@@ -111,197 +352,140 @@ public class TestXmlGenerator {
         
         // Get namespace URI for this element
         String elementNamespace = namespace;
-        if (!prefix.isEmpty() && generator.getNamespaceMap().containsKey(prefix)) {
+        if (prefix != null && !prefix.isEmpty() && generator.getNamespaceMap().containsKey(prefix)) {
             elementNamespace = generator.getNamespaceMap().get(prefix);
         }
         
+        // Reference resolution: a reference, or a missing declaration, renders the global element
+        Element effectiveSchemaElement = expansion.resolveDeclaration(elementName, isReference, schemaElement);
+        
+        ContentModel model = schemaParser.getContentModel(effectiveSchemaElement);
+        List<ElementInfo> children = model.getChildren();
+        
+        // Prepare attribute values (handle enumerations for attributes if needed)
+        Map<String, String> attributeValues = attributeValues(model, attributes);
+        
+        // Elements without children are simple if the declaration they are rendered from has a simple type
+        boolean isSimpleType = children.isEmpty() && effectiveSchemaElement != null
+                               && schemaParser.hasSimpleType(effectiveSchemaElement);
+        
+        // Add opening tag with attributes if any
+        xml.writeCharacters("  ");
+        xml.writeStartElement(qualifiedName(prefix, localName));
+        for (Map.Entry<String, String> attribute : attributeValues.entrySet()) {
+            xml.writeAttribute(attribute.getKey(), attribute.getValue());
+        }
+        if (isSimpleType) {
+            // Simple values are written without surrounding whitespace, which enumerations and patterns would reject
+            xml.writeCharacters(xmlValueHelper.getElementValue(effectiveSchemaElement));
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            return;
+        }
+        xml.writeCharacters("\n");
+
+        if (!children.isEmpty()) {
+            // Complex type: add children recursively, no text content
+            InstanceExpansion.Plan plan = expansion.getPlan(effectiveSchemaElement);
+            if (plan.full) {
+                writeInstanceContent(out, model.getParticle(), elementNamespace);
+            } else if (plan.minimalDepth != InstanceExpansion.UNBOUNDED) {
+                writeMinimalContent(out, model.getParticle(), elementNamespace);
+            }
+        }
+        // Close the element
+        xml.writeCharacters("  ");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+    
+    /**
+     * Write the content of a complete instance: every element and group at least once,
+     * and the first alternative of a choice
+     */
+    private void writeInstanceContent(InstanceWriter out, Particle particle, String namespace) throws XMLStreamException {
+        int count = Math.max(particle.minOccurs, 1); // Always at least 1
+        if (particle.kind == Particle.Kind.ELEMENT) {
+            writeChildInstances(out, particle.element, count, namespace);
+            return;
+        }
         for (int i = 0; i < count; i++) {
-            // Reference resolution: if isReference, resolve to global element definition
-            Element effectiveSchemaElement = schemaElement;
-            if (isReference && schemaElement != null) {
-                // If schemaElement is a reference, resolve to the global element it points to
-                String refName = schemaElement.getAttribute("ref");
-                if (!refName.isEmpty()) {
-                    String refLocal = refName.contains(":") ? refName.split(":")[1] : refName;
-                    if (generator.getGlobalElementDefinitions().containsKey(refLocal)) {
-                        effectiveSchemaElement = generator.getGlobalElementDefinitions().get(refLocal);
-                    }
+            if (particle.kind == Particle.Kind.CHOICE) {
+                if (!particle.particles.isEmpty()) {
+                    writeInstanceContent(out, particle.particles.get(0), namespace);
                 }
-            }
-            // If not found, fallback to global element by localName
-            if (effectiveSchemaElement == null && generator.getGlobalElementDefinitions().containsKey(localName)) {
-                effectiveSchemaElement = generator.getGlobalElementDefinitions().get(localName);
-            }
-
-            // Prepare attributes string (handle enumerations for attributes if needed)
-            StringBuilder attrBuilder = new StringBuilder();
-            if (effectiveSchemaElement != null) {
-                // Handle attributes
-                Element complexType = generator.findChildElement(effectiveSchemaElement, "complexType");
-                if (complexType != null) {
-                    NodeList attributes = complexType.getElementsByTagNameNS(javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI, "attribute");
-                    for (int a = 0; a < attributes.getLength(); a++) {
-                        Element attrElem = (Element) attributes.item(a);
-                        String attrName = attrElem.getAttribute("name");
-                        // Only add attribute if it is explicitly defined for this element
-                        if (attrName == null || attrName.trim().isEmpty()) continue;
-                        // Never add 'type' as an attribute unless it is explicitly defined as an attribute (not a type reference)
-                        if (attrName.equals("type") && (!attrElem.getTagName().endsWith("attribute") || !attrElem.hasAttribute("name"))) continue;
-                        String attrValue = xmlValueHelper.getAttributeValue(attrElem);
-                        attrBuilder.append(" ").append(attrName).append("=\"").append(attrValue).append("\"");
-                    }
+            } else {
+                for (Particle child : particle.particles) {
+                    writeInstanceContent(out, child, namespace);
                 }
             }
-
-            // Determine if this element is a simple type
-            boolean isSimpleType = false;
-            // Use SchemaParser to get children for this element (handles inline complex types)
-            List<ElementInfo> children = new ArrayList<>();
-            if (effectiveSchemaElement != null) {
-                children = schemaParser.findChildElements(effectiveSchemaElement);
-            }
-
-            // Try to find ElementInfo for this element
-            ElementInfo info = null;
-            if (generator.getGlobalElementDefinitions().containsKey(localName)) {
-                if (children != null && !children.isEmpty()) {
-                    isSimpleType = false;
-                } else {
-                    for (List<ElementInfo> childList : generator.getGlobalElementsMap().values()) {
-                        for (ElementInfo e : childList) {
-                            if (e.name.equals(localName)) {
-                                info = e;
-                                break;
-                            }
-                        }
-                        if (info != null) break;
-                    }
-                    if (info != null) {
-                        isSimpleType = info.isSimpleType;
-                    } else {
-                        isSimpleType = false;
-                    }
+        }
+    }
+    
+    /**
+     * Write the shortest terminating content: required particles only, as often as required,
+     * and the alternative of a choice with the shallowest instance
+     */
+    private void writeMinimalContent(InstanceWriter out, Particle particle, String namespace) throws XMLStreamException {
+        if (particle.kind == Particle.Kind.ELEMENT) {
+            writeChildInstances(out, particle.element, particle.minOccurs, namespace);
+            return;
+        }
+        for (int i = 0; i < particle.minOccurs; i++) {
+            if (particle.kind == Particle.Kind.CHOICE) {
+                Particle alternative = expansion.shallowestAlternative(particle);
+                if (alternative != null) {
+                    writeMinimalContent(out, alternative, namespace);
                 }
             } else {
-                for (List<ElementInfo> childList : generator.getGlobalElementsMap().values()) {
-                    for (ElementInfo e : childList) {
-                        if (e.name.equals(localName)) {
-                            info = e;
-                            break;
-                        }
-                    }
-                    if (info != null) break;
-                }
-                if (info != null) {
-                    isSimpleType = info.isSimpleType;
+                for (Particle child : particle.particles) {
+                    writeMinimalContent(out, child, namespace);
                 }
             }
-
-            // Add opening tag with attributes if any
-            xml.append("  <").append(prefix).append(":").append(localName).append(attrBuilder).append(">\n");
-
-            if (children != null && !children.isEmpty()) {
-                // Complex type: always add all required children recursively, no text content
-                for (ElementInfo child : children) {
-                    int childCount = Math.max(child.minOccurs, 1); // Always at least 1
-                    // Find schemaElement for child
-                    Element childSchemaElement = null;
-                    if (effectiveSchemaElement != null) {
-                        Element complexType = generator.findChildElement(effectiveSchemaElement, "complexType");
-                        if (complexType != null) {
-                            Element sequence = generator.findChildElement(complexType, "sequence");
-                            if (sequence != null) {
-                                NodeList elements = sequence.getElementsByTagNameNS(javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI, "element");
-                                for (int j = 0; j < elements.getLength(); j++) {
-                                    Element el = (Element) elements.item(j);
-                                    String name = el.getAttribute("name");
-                                    String ref = el.getAttribute("ref");
-                                    if ((!name.isEmpty() && name.equals(child.name)) || (!ref.isEmpty() && ref.equals(child.name))) {
-                                        childSchemaElement = el;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    // Fallback to global element definition if not found inline
-                    if (childSchemaElement == null && generator.getGlobalElementDefinitions().containsKey(child.name)) {
-                        childSchemaElement = generator.getGlobalElementDefinitions().get(child.name);
-                    }
-                    // If child is a simple type, generate value directly
-                    if (child.isSimpleType) {
-                        String prefixChild = generator.getDefaultNamespacePrefix();
-                        String localChildName = child.name;
-                        if (child.name.contains(":")) {
-                            String[] parts = child.name.split(":");
-                            prefixChild = parts[0];
-                            localChildName = parts[1];
-                        }
-                        xml.append("  <").append(prefixChild).append(":").append(localChildName).append(">");
-                        // Find the correct <xs:element> node for this child within the parent complexType
-                        Element valueSchemaElement = null;
-                        if (effectiveSchemaElement != null) {
-                            Element complexType = generator.findChildElement(effectiveSchemaElement, "complexType");
-                            if (complexType != null) {
-                                // Recursively search for <xs:element> with the correct name inside <xs:sequence>, <xs:choice>, or <xs:all>
-                                valueSchemaElement = findElementByNameRecursive(complexType, localChildName);
-                            }
-                        }
-                        // Fallback to previous logic if not found
-                        if (valueSchemaElement == null && childSchemaElement != null && "element".equals(childSchemaElement.getLocalName())) {
-                            valueSchemaElement = childSchemaElement;
-                        } else if (valueSchemaElement == null && generator.getGlobalElementDefinitions().containsKey(child.name)) {
-                            valueSchemaElement = generator.getGlobalElementDefinitions().get(child.name);
-                        }
-                        // If this is a reference, resolve to the referenced global element
-                        if (valueSchemaElement != null && valueSchemaElement.hasAttribute("ref")) {
-                            String refName = valueSchemaElement.getAttribute("ref");
-                            String refLocal = refName.contains(":") ? refName.split(":")[1] : refName;
-                            if (generator.getGlobalElementDefinitions().containsKey(refLocal)) {
-                                valueSchemaElement = generator.getGlobalElementDefinitions().get(refLocal);
-                            }
-                        
-                            // Recursively search for <xs:element> with the given name inside a parent node
-                            private Element findElementByNameRecursive(Element parent, String name) {
-                                if (parent == null) return null;
-                                NodeList children = parent.getChildNodes();
-                                for (int i = 0; i < children.getLength(); i++) {
-                                    org.w3c.dom.Node node = children.item(i);
-                                    if (node.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE) {
-                                        Element el = (Element) node;
-                                        if ("element".equals(el.getLocalName()) && name.equals(el.getAttribute("name"))) {
-                                            return el;
-                                        }
-                                        // Recurse into <xs:sequence>, <xs:choice>, <xs:all>, <xs:complexType>
-                                        if ("sequence".equals(el.getLocalName()) || "choice".equals(el.getLocalName()) ||
-                                            "all".equals(el.getLocalName()) || "complexType".equals(el.getLocalName())) {
-                                            Element found = findElementByNameRecursive(el, name);
-                                            if (found != null) return found;
-                                        }
-                                    }
-                                }
-                                return null;
-                            }
-                        }
-                        // If still null, fallback to the current child name in global definitions
-                        if (valueSchemaElement == null && generator.getGlobalElementDefinitions().containsKey(child.name)) {
-                            valueSchemaElement = generator.getGlobalElementDefinitions().get(child.name);
-                        }
-                        // Only use enumerations from the correct <xs:element> node
-                        String value = xmlValueHelper.getElementValue(valueSchemaElement);
-                        xml.append(value);
-                        xml.append("</").append(prefixChild).append(":").append(localChildName).append(">\n");
-                    } else {
-                        addCompleteElementInstance(xml, child.name, child.isReference, childCount, elementNamespace, childSchemaElement);
-                    }
-                }
-            } else if (isSimpleType) {
-                // Only add text content for simple types with no children
-                String value = xmlValueHelper.getElementValue(effectiveSchemaElement);
-                xml.append("    ").append(value).append("\n");
+        }
+    }
+    
+    private void writeChildInstances(InstanceWriter out, ElementInfo child, int count, String namespace) throws XMLStreamException {
+        Element childSchemaElement = child.declaration;
+        // Fallback to global element definition if not found inline
+        if (childSchemaElement == null && generator.getGlobalElementDefinitions().containsKey(child.name)) {
+            childSchemaElement = generator.getGlobalElementDefinitions().get(child.name);
+        }
+        if (!child.isSimpleType) {
+            addCompleteElementInstance(out, child.name, child.isReference, count, namespace, childSchemaElement);
+            return;
+        }
+        
+        // If child is a simple type, generate value directly
+        Element valueSchemaElement = childSchemaElement;
+        // If this is a reference, resolve to the referenced global element
+        if (valueSchemaElement != null && valueSchemaElement.hasAttribute("ref")) {
+            String refName = valueSchemaElement.getAttribute("ref");
+            String refLocal = refName.contains(":") ? refName.split(":")[1] : refName;
+            if (generator.getGlobalElementDefinitions().containsKey(refLocal)) {
+                valueSchemaElement = generator.getGlobalElementDefinitions().get(refLocal);
             }
-            // Close the element
-            xml.append("  </").append(prefix).append(":").append(localName).append(">\n");
+        }
+        // Only use enumerations from the correct <xs:element> node
+        writeValueElements(out, child, xmlValueHelper.getElementValue(valueSchemaElement), count);
+    }
+    
+    // Write occurrences of a simple child element with the given value
+    private void writeValueElements(InstanceWriter out, ElementInfo child, String value, int count) throws XMLStreamException {
+        XMLStreamWriter xml = out.xml();
+        String prefixChild = generator.getDefaultNamespacePrefix();
+        String localChildName = child.name;
+        if (child.name.contains(":")) {
+            String[] parts = child.name.split(":");
+            prefixChild = parts[0];
+            localChildName = parts[1];
+        }
+        for (int i = 0; i < count; i++) {
+            xml.writeCharacters("  ");
+            xml.writeStartElement(qualifiedName(prefixChild, localChildName));
+            xml.writeCharacters(value);
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
         }
     }
     
@@ -309,12 +493,13 @@ public class TestXmlGenerator {
      * Generate XML with specific element value
      */
     public String generateXmlWithValue(String elementName, String value, String namespace) {
+        long start = System.nanoTime();
         StringBuilder xml = new StringBuilder();
         xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
         
         // Add namespace if needed
         if (namespace != null && !namespace.isEmpty()) {
-            String prefix = generator.getDefaultNamespacePrefix();
+            String prefix = rootPrefix(elementName);
             
             xml.append("<").append(prefix).append(":").append(elementName);
             
@@ -333,117 +518,96 @@ public class TestXmlGenerator {
                .append("</").append(elementName).append(">\n");
         }
         
-        return xml.toString();
+        String result = xml.toString();
+        generator.getMetrics().record(RunMetrics.RENDER, start);
+        return result;
     }
     
     /**
-     * Generate XML with specific attribute value
+     * Generate XML with specific attribute value: a complete instance of the element with
+     * the attribute set to the value
      */
     public String generateXmlWithAttributeValue(String elementName, String attrName, String value, String namespace) {
-        StringBuilder xml = new StringBuilder();
-        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        
-        // Add namespace if needed
-        if (namespace != null && !namespace.isEmpty()) {
-            String prefix = generator.getDefaultNamespacePrefix();
-            
-            xml.append("<").append(prefix).append(":").append(elementName);
-            
-            // Add namespace declarations
-            for (Map.Entry<String, String> entry : generator.getNamespaceMap().entrySet()) {
-                xml.append(" xmlns:").append(entry.getKey())
-                   .append("=\"").append(entry.getValue()).append("\"");
-            }
-            
-            xml.append(" ").append(attrName).append("=\"").append(value).append("\">")
-               .append("</").append(prefix).append(":").append(elementName).append(">\n");
-        } else {
-            xml.append("<").append(elementName)
-               .append(" ").append(attrName).append("=\"").append(value).append("\">")
-               .append("</").append(elementName).append(">\n");
-        }
-        
-        return xml.toString();
+        return renderTestXml(elementName, null, 0, namespace, this::writeCompleteInstances,
+                             Collections.singletonMap(attrName, value));
     }
     
     /**
-     * Generate XML with parent and child element with specific value
+     * Generate XML with parent and child element with specific value: the child occurs as
+     * often as the parent requires, at least once, and everything else the parent requires
+     * is rendered around it
      */
     public String generateParentXmlWithChildValue(String parentName, String childName, boolean isReference,
                                                 String value, String namespace) {
-        StringBuilder xml = new StringBuilder();
-        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        
-        String parentPrefix = generator.getDefaultNamespacePrefix();
-        String childPrefix = parentPrefix;
-        String localChildName = childName;
-        
-        if (childName.contains(":")) {
-            String[] parts = childName.split(":");
-            childPrefix = parts[0];
-            localChildName = parts[1];
-        }
-        
-        // Add parent with namespaces
-        xml.append("<").append(parentPrefix).append(":").append(parentName);
-        
-        // Add namespace declarations
-        for (Map.Entry<String, String> entry : generator.getNamespaceMap().entrySet()) {
-            xml.append(" xmlns:").append(entry.getKey())
-               .append("=\"").append(entry.getValue()).append("\"");
-        }
-        
-        xml.append(">\n");
-        
-        // Add child with value
-        xml.append("  <").append(childPrefix).append(":").append(localChildName).append(">")
-           .append(value)
-           .append("</").append(childPrefix).append(":").append(localChildName).append(">\n");
-        
-        // Close parent
-        xml.append("</").append(parentPrefix).append(":").append(parentName).append(">\n");
-        
-        return xml.toString();
+        return renderTestXml(parentName, childName, requiredOccurrences(parentName, childName), namespace,
+                             (out, target, count, ns) -> writeValueElements(out, target, value, count), Collections.emptyMap());
     }
     
     /**
-     * Generate XML with parent, child element, and attribute
+     * Generate XML with parent, child element, and attribute: complete instances of the child
+     * with the attribute set to the value
      */
     public String generateParentXmlWithChildAttribute(String parentName, String childName, boolean isReference,
                                                     String attrName, String value, String namespace) {
-        StringBuilder xml = new StringBuilder();
-        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        
-        String parentPrefix = generator.getDefaultNamespacePrefix();
-        String childPrefix = parentPrefix;
-        String localChildName = childName;
-        
-        if (childName.contains(":")) {
-            String[] parts = childName.split(":");
-            childPrefix = parts[0];
-            localChildName = parts[1];
+        Map<String, String> attributes = Collections.singletonMap(attrName, value);
+        return renderTestXml(parentName, childName, requiredOccurrences(parentName, childName), namespace,
+                             (out, target, count, ns) -> {
+                                 for (int i = 0; i < count; i++) {
+                                     renderElementInstance(out, target.name, target.isReference, ns, target.declaration, attributes);
+                                 }
+                             }, Collections.emptyMap());
+    }
+    
+    // Render a test document of a global element as a string
+    private String renderTestXml(String parentName, String targetChildName, int occurrences, String namespace,
+                                 TargetWriter targetWriter, Map<String, String> rootAttributes) {
+        long start = System.nanoTime();
+        StringWriter out = new StringWriter();
+        try {
+            writeTestXml(new InstanceWriter(out), parentName, targetChildName, occurrences, namespace,
+                         generator.getGlobalElementDefinitions().get(parentName), targetWriter, rootAttributes);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Could not generate XML for " + parentName, e);
         }
+        String result = out.toString();
+        generator.getMetrics().record(RunMetrics.RENDER, start);
+        return result;
+    }
+    
+    // Occurrences of a child its parent requires, at least one
+    private int requiredOccurrences(String parentName, String childName) {
+        Particle content = schemaParser.getContentModel(generator.getGlobalElementDefinitions().get(parentName)).getParticle();
+        Particle target = content != null ? content.findElement(childName) : null;
+        return target != null ? Math.max(target.minOccurs, 1) : 1;
+    }
+    
+    /**
+     * Identifies one rendered instance: the element name and its declaration node (by identity)
+     */
+    private static final class TemplateKey {
+        private final String elementName;
+        private final boolean isReference;
+        private final String namespace;
+        private final Element schemaElement;
         
-        // Add parent with namespaces
-        xml.append("<").append(parentPrefix).append(":").append(parentName);
-        
-        // Add namespace declarations
-        for (Map.Entry<String, String> entry : generator.getNamespaceMap().entrySet()) {
-            xml.append(" xmlns:").append(entry.getKey())
-               .append("=\"").append(entry.getValue()).append("\"");
+        TemplateKey(String elementName, boolean isReference, String namespace, Element schemaElement) {
+            this.elementName = elementName;
+            this.isReference = isReference;
+            this.namespace = namespace;
+            this.schemaElement = schemaElement;
         }
         
-        xml.append(">\n");
-        
-        // Add child with attribute
-        xml.append("  <").append(childPrefix).append(":").append(localChildName)
-           .append(" ").append(attrName).append("=\"").append(value).append("\">")
-           .append("TestContent")
-           .append("</").append(childPrefix).append(":").append(localChildName).append(">\n");
-        
-        // Close parent
-        xml.append("</").append(parentPrefix).append(":").append(parentName).append(">\n");
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TemplateKey)) return false;
+            TemplateKey other = (TemplateKey) o;
+            return elementName.equals(other.elementName) && isReference == other.isReference
+                && Objects.equals(namespace, other.namespace) && schemaElement == other.schemaElement;
+        }
         
-        return xml.toString();
+        @Override
+        public int hashCode() {
+            return Objects.hash(elementName, isReference, namespace, System.identityHashCode(schemaElement));
+        }
     }
 }
\ No newline at end of file
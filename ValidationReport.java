@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread-safe collection of validation results for a generation run
+ */
+public class ValidationReport {
+
+    private final Queue<ValidationResult> results = new ConcurrentLinkedQueue<>();
+
+    public void add(ValidationResult result) {
+        results.add(result);
+    }
+
+    /**
+     * All results, ordered by case id so reports are stable between runs
+     */
+    public List<ValidationResult> getResults() {
+        List<ValidationResult> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparing(r -> r.caseId));
+        return sorted;
+    }
+
+    /**
+     * Results where the validator disagreed with the expected outcome
+     */
+    public List<ValidationResult> getMismatches() {
+        List<ValidationResult> mismatches = new ArrayList<>();
+        for (ValidationResult result : getResults()) {
+            if (!result.isAsExpected()) {
+                mismatches.add(result);
+            }
+        }
+        return mismatches;
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Number of cases confirmed against the schema model only, without the validator
+     */
+    public int modelCheckedCount() {
+        int count = 0;
+        for (ValidationResult result : results) {
+            if (ValidationResult.MODEL.equals(result.checkedBy)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write the report as JSON
+     */
+    public void writeJson(Writer out) throws IOException {
+        List<ValidationResult> sorted = getResults();
+        out.write("{\n");
+        out.write("  \"total\": " + sorted.size() + ",\n");
+        out.write("  \"mismatches\": " + getMismatches().size() + ",\n");
+        out.write("  \"results\": [");
+        for (int i = 0; i < sorted.size(); i++) {
+            ValidationResult r = sorted.get(i);
+            out.write(i == 0 ? "\n" : ",\n");
+            out.write("    {\"case\": " + quote(r.caseId)
+                    + ", \"expected\": \"" + (r.expectValid ? "valid" : "invalid") + "\""
+                    + ", \"actual\": \"" + (r.error ? "error" : r.valid ? "valid" : "invalid") + "\""
+                    + ", \"asExpected\": " + r.isAsExpected()
+                    + ", \"firstError\": " + quote(r.firstError)
+                    + ", \"line\": " + r.line
+                    + ", \"column\": " + r.column
+                    + ", \"checkedBy\": " + quote(r.checkedBy) + "}");
+        }
+        out.write(sorted.isEmpty() ? "]\n" : "\n  ]\n");
+        out.write("}\n");
+    }
+
+    // Quote a string as a JSON string literal
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Number of cases that could not be validated at all
+     */
+    public int errorCount() {
+        int count = 0;
+        for (ValidationResult result : results) {
+            if (result.error) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        int modelChecked = modelCheckedCount();
+        int errors = errorCount();
+        return "Validation: " + size() + " cases, " + getMismatches().size() + " not as expected"
+               + (errors > 0 ? ", " + errors + " could not be validated" : "")
+               + (modelChecked > 0 ? ", " + modelChecked + " checked against the schema model only" : "");
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Outcome of validating one generated case against the schema
+ */
+public class ValidationResult {
+    static final String SCHEMA = "schema";
+    static final String MODEL = "model";
+
+    final String caseId;
+    final boolean expectValid;
+    final boolean valid;
+    final String firstError; // null when the document is valid
+    final int line;          // -1 when unknown
+    final int column;        // -1 when unknown
+    final String checkedBy;  // SCHEMA for the validator, MODEL for an InstanceChecker proof only
+    final boolean error;     // true if the case could not be validated at all
+
+    public ValidationResult(String caseId, boolean expectValid, boolean valid, String firstError, int line, int column) {
+        this(caseId, expectValid, valid, firstError, line, column, SCHEMA);
+    }
+
+    public ValidationResult(String caseId, boolean expectValid, boolean valid, String firstError, int line, int column,
+                            String checkedBy) {
+        this(caseId, expectValid, valid, firstError, line, column, checkedBy, false);
+    }
+
+    private ValidationResult(String caseId, boolean expectValid, boolean valid, String firstError, int line, int column,
+                             String checkedBy, boolean error) {
+        this.caseId = caseId;
+        this.expectValid = expectValid;
+        this.valid = valid;
+        this.firstError = firstError;
+        this.line = line;
+        this.column = column;
+        this.checkedBy = checkedBy;
+        this.error = error;
+    }
+
+    /**
+     * Result of a case that could not be validated, for example because the schema did not
+     * compile or the document could not be read; it is never as expected
+     */
+    public static ValidationResult error(String caseId, boolean expectValid, String message) {
+        return new ValidationResult(caseId, expectValid, false, message, -1, -1, SCHEMA, true);
+    }
+
+    /**
+     * True if the validator agreed with the expected outcome
+     */
+    public boolean isAsExpected() {
+        return !error && valid == expectValid;
+    }
+}
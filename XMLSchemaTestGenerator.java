@@ -1,7 +1,10 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.*;
 import org.w3c.dom.*;
@@ -13,47 +16,182 @@ import org.w3c.dom.*;
 public class XMLSchemaTestGenerator {
     
     private static final Random random = new Random();
-    private static final Map<String, String> NAMESPACE_MAP = new HashMap<>();
-    private final Map<String, List<ElementInfo>> globalElementsMap = new HashMap<>();
-    private final Map<String, Element> globalElementDefinitions = new HashMap<>();
-    private final Map<String, List<String>> enumValueCache = new HashMap<>();
+    private static final String MANIFEST_FILE = "test-output/.manifest";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    // Test files waiting for an I/O thread; bounds the memory held by queued output
+    private static final int WRITE_QUEUE_CAPACITY = 1024;
+    // Namespaces collected while loading; frozen into the schema model afterwards
+    private final Map<String, String> namespaceMap = new HashMap<>();
+    private final Set<String> schemaFiles = new LinkedHashSet<>();
+    private final SchemaCache schemaCache = new SchemaCache();
+    private final Set<String> emittedFiles = ConcurrentHashMap.newKeySet();
+    private final Map<String, BatchValidator> batchValidators = new ConcurrentHashMap<>();
+    private final ValidationReport validationReport = new ValidationReport();
+    // Test cases and unexpected validation outcomes per global element, for the element summaries
+    private final Map<String, ElementStats> elementStats = new ConcurrentHashMap<>();
+    private final ThreadLocal<ElementStats> currentElementStats = new ThreadLocal<>();
+    private final RunMetrics metrics = new RunMetrics();
+    private String metricsFile;
+    private String reportFile = null;
+    private boolean incremental = false;
+    private GenerationManifest manifest;
     private String defaultNamespacePrefix = null;
-    private SchemaParser schemaParser;
-    private TestXmlGenerator xmlGenerator;
-    private EnumerationTestGenerator enumTestGenerator;
-    private CardinalityTestGenerator cardinalityTestGenerator;
+    private SchemaModel schemaModel;
+    private boolean writeFiles = true;
+    private boolean streamOutput = false;
+    private int parallelism = 1;
+    private boolean useSnapshot = false;
+    private String archiveFile;
+    private OutputSink outputSink = new DirectoryOutputSink();
+    private int ioThreads = 2;
+    // Fraction of cases with an expected outcome that still go through the validator; below 1 is fast mode
+    private double validationSample = 1.0;
+    // Check every case against the schema model as well as validating it, and count where the two disagree
+    private boolean verifyModel = false;
+    private final LongAdder modelProofs = new LongAdder();
+    private final LongAdder modelDisagreements = new LongAdder();
+    // Deepest nesting a fully expanded instance may have before only its required content is rendered
+    private int maxDepth = InstanceExpansion.DEFAULT_MAX_DEPTH;
+    private AsyncWriteStage writeStage;
+    // Streamed cases that can only be validated once the archive is complete
+    private final Map<String, DeferredCase> deferredValidations = new ConcurrentHashMap<>();
+    private final SchemaContext context;
+    private final SchemaParser schemaParser;
+    private final EnumerationTestGenerator enumTestGenerator;
+    private final CardinalityTestGenerator cardinalityTestGenerator;
     
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.out.println("Usage: java XMLSchemaTestGenerator <schema-file>");
+            System.out.println("Usage: java XMLSchemaTestGenerator [--no-write] [--stream] [--threads <n>] [--report <file>] [--incremental] [--snapshot] [--zip <archive>] [--io-threads <n>] [--log-level <level>] [--metrics <file>] [--validate-sample <fraction>] [--verify-model] [--max-depth <n>] <schema-file>");
             System.exit(1);
         }
         
-        String schemaFile = args[0];
+        String schemaFile = args[args.length - 1];
         try {
             XMLSchemaTestGenerator generator = new XMLSchemaTestGenerator();
+            for (int i = 0; i < args.length - 1; i++) {
+                if ("--no-write".equals(args[i])) {
+                    // Validate in memory only, without writing test files to disk
+                    generator.setWriteFiles(false);
+                } else if ("--stream".equals(args[i])) {
+                    // Stream large documents straight to disk instead of building them in memory
+                    generator.setStreamOutput(true);
+                } else if ("--threads".equals(args[i]) && i + 1 < args.length - 1) {
+                    // Number of worker threads, 0 for one per available processor
+                    int threads = Integer.parseInt(args[++i]);
+                    generator.setParallelism(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+                } else if ("--report".equals(args[i]) && i + 1 < args.length - 1) {
+                    // Write structured validation results as JSON
+                    generator.setReportFile(args[++i]);
+                } else if ("--incremental".equals(args[i])) {
+                    // Only regenerate elements whose schema fingerprint changed since the last run
+                    generator.setIncremental(true);
+                } else if ("--snapshot".equals(args[i])) {
+                    // Keep a binary snapshot of the schema model next to the schema for warm starts
+                    generator.setUseSnapshot(true);
+                } else if ("--zip".equals(args[i]) && i + 1 < args.length - 1) {
+                    // Write all test files into one ZIP or JAR archive instead of separate files
+                    generator.setArchiveFile(args[++i]);
+                } else if ("--io-threads".equals(args[i]) && i + 1 < args.length - 1) {
+                    // Threads writing test files in the background, 0 to write on the generating thread
+                    generator.setIoThreads(Integer.parseInt(args[++i]));
+                } else if ("--log-level".equals(args[i]) && i + 1 < args.length - 1) {
+                    // error, warn, info (per-element summaries, the default) or debug (every file and value)
+                    Log.setLevel(args[++i]);
+                } else if ("--metrics".equals(args[i]) && i + 1 < args.length - 1) {
+                    // Write per-phase, per-element and per-category timings and cache statistics as JSON
+                    generator.setMetricsFile(args[++i]);
+                } else if ("--validate-sample".equals(args[i]) && i + 1 < args.length - 1) {
+                    // Fast mode: validate only this fraction of cases, check the rest against the schema model
+                    generator.setValidationSample(Double.parseDouble(args[++i]));
+                } else if ("--verify-model".equals(args[i])) {
+                    // Validate every case and compare each schema model proof with the validator
+                    generator.setVerifyModel(true);
+                } else if ("--max-depth".equals(args[i]) && i + 1 < args.length - 1) {
+                    // Depth budget for fully expanded instances; recursive types always get their shortest instance
+                    generator.setMaxDepth(Integer.parseInt(args[++i]));
+                }
+            }
             generator.generateTests(schemaFile);
-            System.out.println("Test data generation completed successfully.");
+            Log.info("Test data generation completed successfully.");
         } catch (Exception e) {
-            System.err.println("Error: " + e.getMessage());
+            Log.error("Error: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
     // In the XMLSchemaTestGenerator constructor:
     public XMLSchemaTestGenerator() {
-        schemaParser = new SchemaParser(this);
-        xmlGenerator = new TestXmlGenerator(this, schemaParser);
-        enumTestGenerator = new EnumerationTestGenerator(this);
-        cardinalityTestGenerator = new CardinalityTestGenerator(this);
+        // One parser, type index and enumeration cache for the whole run, shared by all generators
+        context = new SchemaContext(this);
+        schemaParser = context.getParser();
+        enumTestGenerator = new EnumerationTestGenerator(this, context);
+        cardinalityTestGenerator = new CardinalityTestGenerator(this, context);
     }
     
     /**
      * Generate test cases for the given schema file
      */
     public void generateTests(String schemaFile) throws Exception {
+        // A current snapshot lets an incremental run with nothing to regenerate skip schema parsing
+        File snapshotFile = new File(schemaFile + SNAPSHOT_SUFFIX);
+        SchemaSnapshot snapshot = useSnapshot ? SchemaSnapshot.read(snapshotFile) : null;
+        SchemaSnapshot previousSnapshot = snapshot;
+        if (snapshot != null && !snapshot.isCurrent()) {
+            snapshot = null;
+        }
+        if (snapshot != null && incremental && writeFiles && archiveFile == null && finishFromSnapshot(snapshot, snapshotFile)) {
+            return;
+        }
+        
+        String targetNamespace = loadSchema(schemaFile);
+        
+        // Create output directories or the archive
+        if (writeFiles && archiveFile != null) {
+            outputSink = new ZipOutputSink(new File(archiveFile));
+        } else if (writeFiles) {
+            createDirectories();
+        }
+        // The write stage and the sink are closed on every path, so a failed run stops its
+        // I/O threads and still leaves a readable archive
+        try (OutputSink sink = outputSink;
+             AsyncWriteStage stage = writeFiles && ioThreads > 0
+                 ? new AsyncWriteStage(sink, ioThreads, WRITE_QUEUE_CAPACITY) : null) {
+            writeStage = stage;
+            if (useSnapshot && snapshot == null) {
+                SchemaSnapshot captured = SchemaSnapshot.capture(schemaModel, schemaParser, schemaFiles);
+                if (!captured.hasSameFingerprints(previousSnapshot)) {
+                    captured.write(snapshotFile);
+                    Log.info("Schema model snapshot written to " + snapshotFile);
+                }
+            }
+            
+            // Only test files written to disk can be reused by a later run
+            if (incremental && writeFiles && archiveFile == null) {
+                manifest = GenerationManifest.load(new File(MANIFEST_FILE), getOutputSettings());
+                if (manifest.isSettingsChanged()) {
+                    Log.info("Output settings changed since the last run, regenerating all elements: " + getOutputSettings());
+                }
+            }
+            
+            // Process global elements
+            processGlobalElements(targetNamespace, schemaFile);
+        } finally {
+            writeStage = null;
+        }
+        validateDeferred(schemaFile);
+        
+        finishRun();
+    }
+    
+    /**
+     * Load a schema with its includes and imports and build the schema model, without generating tests.
+     * Returns the target namespace of the schema.
+     */
+    public String loadSchema(String schemaFile) throws Exception {
         // Parse the schema
-        Document schemaDoc = parseXmlFile(schemaFile);
+        long loadStart = System.nanoTime();
+        Document schemaDoc = parseSchemaFile(schemaFile);
         Element rootElement = schemaDoc.getDocumentElement();
         
         // Extract namespace information
@@ -63,9 +201,6 @@ public class XMLSchemaTestGenerator {
             defaultNamespacePrefix = findPrefixForNamespace(targetNamespace);
         }
         
-        // Create output directories
-        createDirectories();
-        
         // Collect all schema files (including imports and includes)
         Set<String> processedSchemas = new HashSet<>();
         List<Document> schemaDocuments = new ArrayList<>();
@@ -74,34 +209,153 @@ public class XMLSchemaTestGenerator {
         
         // Process includes and imports
         schemaParser.collectIncludedSchemas(schemaDoc, schemaFile, processedSchemas, schemaDocuments);
+        metrics.record(RunMetrics.LOAD, loadStart);
         
         // Find and cache all global elements from all schema documents
+        long indexStart = System.nanoTime();
         for (Document doc : schemaDocuments) {
             schemaParser.findAllGlobalElements(doc);
         }
         
-        // Process global elements
-        processGlobalElements(targetNamespace, schemaFile);
+        // Freeze everything found so far into a read-only model shared by all generators
+        schemaModel = schemaParser.buildModel(namespaceMap, defaultNamespacePrefix);
+        metrics.record(RunMetrics.INDEX, indexStart);
+        
+        // Remember the include/import closure so compiled schemas can be reused safely
+        schemaFiles.addAll(processedSchemas);
+        schemaCache.refresh(schemaFile, schemaFiles);
+        
+        return targetNamespace;
+    }
+    
+    /**
+     * Complete an incremental run from a snapshot if every global element is unchanged
+     * and all of its test files still exist; returns false if anything needs regenerating
+     */
+    private boolean finishFromSnapshot(SchemaSnapshot snapshot, File snapshotFile) throws Exception {
+        GenerationManifest previous = GenerationManifest.load(new File(MANIFEST_FILE), getOutputSettings());
+        for (Map.Entry<String, String> entry : snapshot.getElementFingerprints().entrySet()) {
+            if (!previous.isUpToDate(entry.getKey(), entry.getValue())) {
+                return false;
+            }
+        }
+        
+        Log.info("Schema model loaded from snapshot " + snapshotFile);
+        schemaModel = snapshot.toModel();
+        schemaFiles.addAll(snapshot.getSchemaFiles());
+        manifest = previous;
+        for (String elementName : snapshot.getElementFingerprints().keySet()) {
+            Log.info("Skipping unchanged global element: " + elementName);
+        }
+        finishRun();
+        return true;
+    }
+    
+    /**
+     * Remove stale outputs, save the manifest and print the run summary
+     */
+    private void finishRun() throws Exception {
+        if (manifest != null) {
+            for (String staleFile : manifest.getStaleOutputs()) {
+                if (new File(staleFile).delete()) {
+                    Log.info("Deleted stale test file: " + staleFile);
+                }
+            }
+            manifest.save(new File(MANIFEST_FILE));
+        }
+        
+        Log.info(schemaCache.toString());
+        Log.info(validationReport.toString());
+        if (verifyModel) {
+            Log.info("Model check: " + modelProofs.sum() + " cases proven, " + modelDisagreements.sum()
+                     + " disagreeing with the validator");
+        }
+        Log.info(metrics.toString());
+        if (reportFile != null) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8")) {
+                validationReport.writeJson(writer);
+            }
+            Log.info("Validation report written to " + reportFile);
+        }
+        if (metricsFile != null) {
+            metrics.addCacheCounts("schemas", schemaCache.getHits(), schemaCache.getMisses());
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(metricsFile), "UTF-8")) {
+                metrics.writeJson(writer);
+            }
+            Log.info("Run metrics written to " + metricsFile);
+        }
     }
     
     /**
      * Process all global elements for testing
      */
     private void processGlobalElements(String targetNamespace, String schemaFile) throws Exception {
-        for (Map.Entry<String, Element> entry : globalElementDefinitions.entrySet()) {
+        Map<String, Element> elements = new LinkedHashMap<>();
+        for (Map.Entry<String, Element> entry : schemaModel.getGlobalElementDefinitions().entrySet()) {
+            String elementName = entry.getKey();
+            if (manifest != null && manifest.isUpToDate(elementName, schemaParser.fingerprintElement(elementName))) {
+                Log.info("Skipping unchanged global element: " + elementName);
+                continue;
+            }
+            elements.put(elementName, entry.getValue());
+        }
+        
+        if (parallelism > 1) {
+            new ParallelTestScheduler(this, parallelism).run(elements, targetNamespace, schemaFile);
+            return;
+        }
+        
+        for (Map.Entry<String, Element> entry : elements.entrySet()) {
             String elementName = entry.getKey();
             Element elementDef = entry.getValue();
             
-            System.out.println("Processing global element: " + elementName);
-            
-            // Process cardinality tests for child elements
-            cardinalityTestGenerator.generateCardinalityTests(elementName, elementDef, targetNamespace, schemaFile);
+            if (Log.isDebugEnabled()) {
+                Log.debug("Processing global element: " + elementName);
+            }
             
-            // Process enumeration tests
-            enumTestGenerator.generateEnumerationTests(elementName, elementDef, targetNamespace, schemaFile);
+            enterElement(elementName);
+            try {
+                // Process cardinality tests for child elements
+                cardinalityTestGenerator.generateCardinalityTests(elementName, elementDef, targetNamespace, schemaFile);
+                
+                // Process enumeration tests
+                enumTestGenerator.generateEnumerationTests(elementName, elementDef, targetNamespace, schemaFile);
+            } finally {
+                exitElement();
+            }
+            logElementSummary(elementName);
+        }
+    }
+    
+    /**
+     * Attribute test cases produced on this thread to a global element in the summary and the manifest
+     */
+    void enterElement(String elementName) {
+        currentElementStats.set(elementStats.computeIfAbsent(elementName, k -> new ElementStats()));
+        metrics.enterElement(elementName);
+        if (manifest != null) {
+            manifest.enterElement(elementName);
         }
     }
     
+    void exitElement() {
+        currentElementStats.remove();
+        metrics.exitElement();
+        if (manifest != null) {
+            manifest.exitElement();
+        }
+    }
+    
+    /**
+     * Log the number of test cases generated for a global element
+     */
+    void logElementSummary(String elementName) {
+        ElementStats stats = elementStats.get(elementName);
+        long cases = stats != null ? stats.cases.sum() : 0;
+        long mismatches = stats != null ? stats.mismatches.sum() : 0;
+        Log.info("Global element " + elementName + ": " + cases + " test cases, " + mismatches + " not as expected");
+    }
+    
     /**
      * Extract namespace declarations from schema
      */
@@ -113,7 +367,7 @@ public class XMLSchemaTestGenerator {
             if (name.startsWith("xmlns:")) {
                 String prefix = name.substring(6);
                 String uri = attr.getNodeValue();
-                NAMESPACE_MAP.put(prefix, uri);
+                namespaceMap.put(prefix, uri);
             }
         }
     }
@@ -132,7 +386,7 @@ public class XMLSchemaTestGenerator {
      * Find prefix for a namespace URI
      */
     public String findPrefixForNamespace(String namespaceUri) {
-        for (Map.Entry<String, String> entry : NAMESPACE_MAP.entrySet()) {
+        for (Map.Entry<String, String> entry : getNamespaceMap().entrySet()) {
             if (entry.getValue().equals(namespaceUri)) {
                 return entry.getKey();
             }
@@ -144,9 +398,9 @@ public class XMLSchemaTestGenerator {
      * Find child element by local name
      */
     public Element findChildElement(Element parent, String localName) {
-        NodeList children = parent.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
+        // Walk sibling links rather than getChildNodes(), whose item() lookups share a
+        // per-document cache and are not safe when generator threads read the schema DOM
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
             if (child.getNodeType() == Node.ELEMENT_NODE && 
                 localName.equals(child.getLocalName())) {
                 return (Element) child;
@@ -156,71 +410,437 @@ public class XMLSchemaTestGenerator {
     }
     
     /**
-     * Parse XML file into DOM
+     * Read a schema file into a compact DOM holding only its top-level components
      */
-    public Document parseXmlFile(String fileName) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        return builder.parse(new File(fileName));
+    public Document parseSchemaFile(String fileName) throws Exception {
+        return CompactDomLoader.load(new File(fileName));
     }
     
     /**
-     * Write content to file
+     * Write content to the output sink, through the background writer stage while a run is active
      */
     public void writeTestFile(String fileName, String content) throws Exception {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
-            writer.print(content);
-            System.out.println("Created test file: " + fileName);
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (writeStage != null) {
+            writeStage.submit(fileName, bytes);
+        } else {
+            outputSink.write(fileName, out -> out.write(bytes));
+        }
+        if (Log.isDebugEnabled()) {
+            Log.debug("Created test file: " + fileName);
         }
     }
     
     /**
-     * Validate XML against schema
+     * Validate streamed cases that could only be read back from the completed archive
+     */
+    private void validateDeferred(String schemaFile) throws Exception {
+        if (deferredValidations.isEmpty()) {
+            return;
+        }
+        // Select entries by name and validate each straight from the archive, one at a time
+        try (ZipSuiteReader reader = new ZipSuiteReader(new File(archiveFile))) {
+            List<String> names = reader.caseNames().filter(deferredValidations::containsKey).collect(Collectors.toList());
+            for (String name : names) {
+                DeferredCase deferred = deferredValidations.get(name);
+                InstanceChecker.Result model = null;
+                if (isModelChecked(deferred.outcome)) {
+                    try (InputStream in = reader.openCase(name)) {
+                        model = checkModel(new StreamSource(in, name));
+                    }
+                }
+                if (!confirmFromModel(name, deferred.expectValid, deferred.outcome, model)) {
+                    try (InputStream in = reader.openCase(name)) {
+                        validate(new StreamSource(in, name), name, schemaFile, deferred.expectValid, model);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Handle a generated test case: write it to disk if enabled and validate the in-memory content
+     */
+    public void processTestCase(String fileName, String content, String schemaFile, boolean expectValid) throws Exception {
+        processTestCase(fileName, content, schemaFile, expectValid, null);
+    }
+    
+    /**
+     * Handle a generated test case together with the constraint it tests; in fast mode a case
+     * outside the validation sample is confirmed by checking the rendered document against the
+     * schema model when that proves the expected outcome, and validated otherwise
+     */
+    public void processTestCase(String fileName, String content, String schemaFile, boolean expectValid,
+                                ExpectedOutcome outcome) throws Exception {
+        if (manifest != null) {
+            manifest.recordOutput(fileName);
+        }
+        // Enumeration tests recurse into referenced global elements, so the same case
+        // can be produced more than once; only the first one is written and validated
+        if (!emittedFiles.add(fileName)) {
+            return;
+        }
+        ElementStats stats = currentElementStats.get();
+        if (stats != null) {
+            stats.cases.increment();
+        }
+        long caseStart = System.nanoTime();
+        if (writeFiles) {
+            writeTestFile(fileName, content);
+            metrics.record(RunMetrics.WRITE, caseStart);
+        }
+        InstanceChecker.Result model = isModelChecked(outcome) ? checkModel(new StreamSource(new StringReader(content), fileName)) : null;
+        if (!confirmFromModel(fileName, expectValid, outcome, model)) {
+            validate(new StreamSource(new StringReader(content), fileName), fileName, schemaFile, expectValid, model);
+        }
+        metrics.recordCase(RunMetrics.categoryOf(fileName), System.nanoTime() - caseStart);
+    }
+    
+    /**
+     * Handle a test case that is streamed by the renderer: when files are written it goes
+     * straight to the output sink and is validated from there, so the whole document is
+     * never held in memory
+     */
+    public void processTestCase(String fileName, TestCaseRenderer renderer, String schemaFile, boolean expectValid) throws Exception {
+        processTestCase(fileName, renderer, schemaFile, expectValid, null);
+    }
+    
+    /**
+     * Handle a streamed test case together with the constraint it tests
+     */
+    public void processTestCase(String fileName, TestCaseRenderer renderer, String schemaFile, boolean expectValid,
+                                ExpectedOutcome outcome) throws Exception {
+        if (manifest != null) {
+            manifest.recordOutput(fileName);
+        }
+        if (!emittedFiles.add(fileName)) {
+            return;
+        }
+        ElementStats stats = currentElementStats.get();
+        if (stats != null) {
+            stats.cases.increment();
+        }
+        long caseStart = System.nanoTime();
+        if (writeFiles) {
+            // For streamed cases, writing includes rendering
+            outputSink.write(fileName, renderer);
+            metrics.record(RunMetrics.WRITE, caseStart);
+            if (Log.isDebugEnabled()) {
+                Log.debug("Created test file: " + fileName);
+            }
+            Source written = outputSink.read(fileName);
+            if (written == null) {
+                deferredValidations.put(fileName, new DeferredCase(expectValid, outcome));
+            } else {
+                InstanceChecker.Result model = isModelChecked(outcome) ? checkModel(written) : null;
+                if (!confirmFromModel(fileName, expectValid, outcome, model)) {
+                    // A source may be consumed by reading it once
+                    validate(model != null ? outputSink.read(fileName) : written, fileName, schemaFile, expectValid, model);
+                }
+            }
+        } else if (streamOutput) {
+            // Without output a streamed document is rendered again for every reader, through a pipe
+            InstanceChecker.Result model = null;
+            if (isModelChecked(outcome)) {
+                try (RenderPipe pipe = new RenderPipe(renderer, fileName)) {
+                    model = checkModel(new StreamSource(pipe.getInput(), fileName));
+                }
+            }
+            if (!confirmFromModel(fileName, expectValid, outcome, model)) {
+                try (RenderPipe pipe = new RenderPipe(renderer, fileName)) {
+                    validate(new StreamSource(pipe.getInput(), fileName), fileName, schemaFile, expectValid, model);
+                }
+            }
+        } else {
+            // Without output the document is only rendered to be checked
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            renderer.render(out);
+            byte[] bytes = out.toByteArray();
+            InstanceChecker.Result model = isModelChecked(outcome)
+                ? checkModel(new StreamSource(new ByteArrayInputStream(bytes), fileName)) : null;
+            if (!confirmFromModel(fileName, expectValid, outcome, model)) {
+                validate(new StreamSource(new ByteArrayInputStream(bytes), fileName), fileName, schemaFile, expectValid, model);
+            }
+        }
+        metrics.recordCase(RunMetrics.categoryOf(fileName), System.nanoTime() - caseStart);
+    }
+    
+    /**
+     * Validate XML file against schema
      */
     public void validateAgainstSchema(String xmlFile, String schemaFile, boolean expectValid) {
-        try {
-            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            
-            // Set up basic properties for schema resolution
-            factory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "file");
-            factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            
-            Schema schema = factory.newSchema(new File(schemaFile));
-            Validator validator = schema.newValidator();
-            
-            validator.validate(new StreamSource(new File(xmlFile)));
-            
-            // If we get here, validation passed
-            if (!expectValid) {
-                System.out.println("WARNING: " + xmlFile + " passed validation but was expected to fail");
+        validate(new StreamSource(new File(xmlFile)), xmlFile, schemaFile, expectValid);
+    }
+    
+    /**
+     * Validate generated XML content against schema without reading it back from disk
+     */
+    public void validateContent(String name, String content, String schemaFile, boolean expectValid) {
+        validate(new StreamSource(new StringReader(content), name), name, schemaFile, expectValid);
+    }
+    
+    private void validate(Source source, String name, String schemaFile, boolean expectValid) {
+        validate(source, name, schemaFile, expectValid, null);
+    }
+    
+    private void validate(Source source, String name, String schemaFile, boolean expectValid, InstanceChecker.Result model) {
+        BatchValidator validator = batchValidators.computeIfAbsent(schemaFile,
+            file -> new BatchValidator(schemaCache, file, schemaFiles));
+        long start = System.nanoTime();
+        ValidationResult result = validator.validate(name, source, expectValid);
+        metrics.record(RunMetrics.VALIDATE, start);
+        // Sampled cases show whether what the model check proves can be trusted
+        if (model != null && !result.error && (model.isProvenValid() || model.isProvenInvalid())) {
+            modelProofs.increment();
+        }
+        if (model != null && !result.error && (model.isProvenValid() && !result.valid || model.isProvenInvalid() && result.valid)) {
+            modelDisagreements.increment();
+            Log.warn("The schema model check proves " + name + " " + (result.valid ? "invalid (" + model.firstViolation() + ")" : "valid")
+                     + ", but the validator disagrees");
+        }
+        addResult(result, name, expectValid);
+    }
+    
+    // Rendered documents are checked against the model only in fast mode, for cases that say what they test
+    private boolean isModelChecked(ExpectedOutcome outcome) {
+        return outcome != null && (isFastValidation() || verifyModel);
+    }
+    
+    private InstanceChecker.Result checkModel(Source source) {
+        long start = System.nanoTime();
+        InstanceChecker.Result model = context.getChecker().check(source);
+        metrics.record(RunMetrics.VALIDATE, start);
+        return model;
+    }
+    
+    /**
+     * Confirm a case from the model check of its rendered document, unless it falls in the
+     * validation sample or the check does not prove the expected outcome; returns false if
+     * the case still needs to be validated
+     */
+    private boolean confirmFromModel(String name, boolean expectValid, ExpectedOutcome outcome, InstanceChecker.Result model) {
+        if (model == null || verifyModel || isInValidationSample(name) || !outcome.isProvenBy(model, expectValid)) {
+            return false;
+        }
+        String problem = outcome.check(model);
+        if (problem != null) {
+            Log.warn(name + " " + problem);
+        }
+        addResult(new ValidationResult(name, expectValid, expectValid, model.firstViolation(), -1, -1,
+                                       ValidationResult.MODEL), name, expectValid);
+        return true;
+    }
+    
+    // Decided by the case name, so that repeated and parallel runs validate the same sample
+    private boolean isInValidationSample(String name) {
+        int hash = name.hashCode() * 0x9E3779B9;
+        return (hash >>> 8) < validationSample * (1 << 24);
+    }
+    
+    private void addResult(ValidationResult result, String name, boolean expectValid) {
+        validationReport.add(result);
+        
+        if (!result.isAsExpected()) {
+            ElementStats stats = currentElementStats.get();
+            if (stats != null) {
+                stats.mismatches.increment();
             }
-        } catch (Exception e) {
-            // Validation failed
-            if (expectValid) {
-                System.out.println("WARNING: " + xmlFile + " failed validation but was expected to pass: " + e.getMessage());
+            if (result.error) {
+                Log.error(name + " could not be validated: " + result.firstError);
+            } else if (expectValid) {
+                Log.warn(name + " failed validation but was expected to pass: " + result.firstError);
+            } else {
+                Log.warn(name + " passed validation but was expected to fail");
             }
         }
     }
     
     // Getters for fields needed by the other classes
+    public SchemaModel getSchemaModel() {
+        return schemaModel;
+    }
+    
     public Map<String, String> getNamespaceMap() {
-        return NAMESPACE_MAP;
+        return schemaModel != null ? schemaModel.getNamespaces() : Collections.unmodifiableMap(namespaceMap);
     }
     
     public Map<String, List<ElementInfo>> getGlobalElementsMap() {
-        return globalElementsMap;
+        return schemaModel != null ? schemaModel.getGlobalElements() : Collections.emptyMap();
     }
     
     public Map<String, Element> getGlobalElementDefinitions() {
-        return globalElementDefinitions;
+        return schemaModel != null ? schemaModel.getGlobalElementDefinitions() : Collections.emptyMap();
+    }
+    
+    /**
+     * Find the indexed element info for an element name, or null when there is none
+     */
+    public ElementInfo findElementInfo(String name) {
+        return schemaModel != null ? schemaModel.findElementInfo(name) : null;
+    }
+    
+    public Map<Element, List<String>> getEnumValueCache() {
+        return context.getEnumValueCache();
+    }
+    
+    public boolean isWriteFiles() {
+        return writeFiles;
+    }
+    
+    public void setWriteFiles(boolean writeFiles) {
+        this.writeFiles = writeFiles;
+    }
+    
+    public boolean isStreamOutput() {
+        return streamOutput;
+    }
+    
+    public void setStreamOutput(boolean streamOutput) {
+        this.streamOutput = streamOutput;
+    }
+    
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+    
+    // Expected outcome of a case that is validated once the archive is complete
+    private static final class DeferredCase {
+        final boolean expectValid;
+        final ExpectedOutcome outcome;
+        
+        DeferredCase(boolean expectValid, ExpectedOutcome outcome) {
+            this.expectValid = expectValid;
+            this.outcome = outcome;
+        }
+    }
+    
+    public SchemaContext getSchemaContext() {
+        return context;
+    }
+    
+    public CardinalityTestGenerator getCardinalityTestGenerator() {
+        return cardinalityTestGenerator;
+    }
+    
+    public EnumerationTestGenerator getEnumerationTestGenerator() {
+        return enumTestGenerator;
     }
     
-    public Map<String, List<String>> getEnumValueCache() {
-        return enumValueCache;
+    public String getReportFile() {
+        return reportFile;
+    }
+    
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+    
+    public boolean isIncremental() {
+        return incremental;
+    }
+    
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    
+    public String getArchiveFile() {
+        return archiveFile;
+    }
+    
+    public void setArchiveFile(String archiveFile) {
+        this.archiveFile = archiveFile;
+    }
+    
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public String getMetricsFile() {
+        return metricsFile;
+    }
+    
+    public void setMetricsFile(String metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+    
+    public int getIoThreads() {
+        return ioThreads;
+    }
+    
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+    
+    public OutputSink getOutputSink() {
+        return outputSink;
+    }
+    
+    public boolean isUseSnapshot() {
+        return useSnapshot;
+    }
+    
+    public void setUseSnapshot(boolean useSnapshot) {
+        this.useSnapshot = useSnapshot;
+    }
+    
+    public double getValidationSample() {
+        return validationSample;
+    }
+    
+    public void setValidationSample(double validationSample) {
+        this.validationSample = validationSample;
+    }
+    
+    public boolean isVerifyModel() {
+        return verifyModel;
+    }
+    
+    public void setVerifyModel(boolean verifyModel) {
+        this.verifyModel = verifyModel;
+    }
+    
+    /**
+     * True if only a sample of the cases is validated
+     */
+    public boolean isFastValidation() {
+        return validationSample < 1.0;
+    }
+    
+    /**
+     * Options that change the content of generated test files, recorded in the manifest so that
+     * an incremental run regenerates everything when one of them changes
+     */
+    public Map<String, String> getOutputSettings() {
+        Map<String, String> settings = new TreeMap<>();
+        settings.put("max-depth", String.valueOf(maxDepth));
+        return settings;
+    }
+    
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+    
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+    
+    public ValidationReport getValidationReport() {
+        return validationReport;
+    }
+    
+    public SchemaCache getSchemaCache() {
+        return schemaCache;
     }
     
     public String getDefaultNamespacePrefix() {
-        return defaultNamespacePrefix;
+        return schemaModel != null ? schemaModel.getDefaultNamespacePrefix() : defaultNamespacePrefix;
+    }
+    
+    private static final class ElementStats {
+        final LongAdder cases = new LongAdder();
+        final LongAdder mismatches = new LongAdder();
     }
-}
\ No newline at end of file
+}
@@ -15,9 +15,11 @@ public class XmlValueHelper {
             return "SampleValue";
         }
         List<String> attrEnums = schemaParser.findEnumerationValues(attrElem);
-        System.out.println("[DEBUG] getAttributeValue: nodeName=" + attrElem.getNodeName() +
-            ", localName=" + attrElem.getLocalName() +
-            ", enums=" + attrEnums);
+        if (Log.isDebugEnabled()) {
+            Log.debug("getAttributeValue: nodeName=" + attrElem.getNodeName() +
+                ", localName=" + attrElem.getLocalName() +
+                ", enums=" + attrEnums);
+        }
         // Filter out empty or whitespace-only values
         String validEnum = null;
         for (String v : attrEnums) {
@@ -49,10 +51,12 @@ public class XmlValueHelper {
             return "SampleValue";
         }
         List<String> enums = schemaParser.findEnumerationValues(schemaElement);
-        System.out.println("[DEBUG] getElementValue: nodeName=" + schemaElement.getNodeName() +
-            ", localName=" + schemaElement.getLocalName() +
-            ", name=" + schemaElement.getAttribute("name") +
-            ", enums=" + enums);
+        if (Log.isDebugEnabled()) {
+            Log.debug("getElementValue: nodeName=" + schemaElement.getNodeName() +
+                ", localName=" + schemaElement.getLocalName() +
+                ", name=" + schemaElement.getAttribute("name") +
+                ", enums=" + enums);
+        }
         // Filter out empty or whitespace-only values
         String validEnum = null;
         for (String v : enums) {
@@ -0,0 +1,110 @@
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.transform.Source;
+
+/**
+ * Output sink that streams all test cases into a single ZIP or JAR archive.
+ * Each case becomes an entry named after its file, so unpacking the archive reproduces
+ * the test-output directory layout. Cases are spooled to a temporary file as they are
+ * written and only put into the archive on close, sorted by name and with a fixed
+ * timestamp, so archives of the same suite are byte-identical whatever the order in
+ * which threads wrote the cases.
+ */
+public class ZipOutputSink implements OutputSink {
+
+    // DOS timestamps start in 1980; every entry gets this one
+    private static final long ENTRY_TIME = new GregorianCalendar(1980, Calendar.JANUARY, 1).getTimeInMillis();
+
+    private final File archive;
+    private final File spoolFile;
+    private final OutputStream spool;
+    // Position and length of every case in the spool file, by entry name
+    private final Map<String, long[]> entries = new TreeMap<>();
+    private long spoolSize;
+    private boolean closed;
+
+    public ZipOutputSink(File archive) throws IOException {
+        this.archive = archive;
+        File directory = archive.getAbsoluteFile().getParentFile();
+        this.spoolFile = File.createTempFile(archive.getName(), ".spool", directory);
+        this.spool = new BufferedOutputStream(new FileOutputStream(spoolFile), 64 * 1024);
+    }
+
+    @Override
+    public synchronized void write(String fileName, TestCaseRenderer renderer) throws Exception {
+        String name = fileName.replace(File.separatorChar, '/');
+        long start = spoolSize;
+        // The renderer must not close the spool, only its own case
+        renderer.render(new FilterOutputStream(spool) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                spoolSize++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                spoolSize += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+        entries.put(name, new long[]{start, spoolSize - start});
+    }
+
+    /**
+     * Entries cannot be read before the archive is complete; use ZipSuiteReader after close
+     */
+    @Override
+    public Source read(String fileName) {
+        return null;
+    }
+
+    public File getArchive() {
+        return archive;
+    }
+
+    /**
+     * Write the archive from the spool in entry name order and delete the spool
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            spool.close();
+            try (RandomAccessFile in = new RandomAccessFile(spoolFile, "r");
+                 ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive), 64 * 1024))) {
+                byte[] buffer = new byte[64 * 1024];
+                for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+                    ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                    zipEntry.setTime(ENTRY_TIME);
+                    zip.putNextEntry(zipEntry);
+                    in.seek(entry.getValue()[0]);
+                    long remaining = entry.getValue()[1];
+                    while (remaining > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            throw new EOFException("Spool file " + spoolFile + " ends before " + entry.getKey());
+                        }
+                        zip.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                    zip.closeEntry();
+                }
+            }
+        } finally {
+            if (!spoolFile.delete()) {
+                spoolFile.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads a test suite written by ZipOutputSink.
+ * Cases under a positive/ directory are expected to be valid, cases under negative/ to be invalid,
+ * so an archive can be validated on its own with BatchValidator.validateAll.
+ */
+public class ZipSuiteReader implements Closeable {
+
+    private final ZipFile zip;
+
+    public ZipSuiteReader(File archive) throws IOException {
+        this.zip = new ZipFile(archive);
+    }
+
+    /**
+     * All test cases in the archive, in entry order, which for archives written by
+     * ZipOutputSink is name order; entries are read as the stream is consumed
+     */
+    public Stream<GeneratedCase> cases() {
+        return zip.stream()
+                  .filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".xml"))
+                  .map(entry -> new GeneratedCase(entry.getName(), readEntry(entry), isPositive(entry.getName())));
+    }
+
+    /**
+     * Names of all test cases in the archive, in entry order, without reading any content
+     */
+    public Stream<String> caseNames() {
+        return zip.stream()
+                  .filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".xml"))
+                  .map(ZipEntry::getName);
+    }
+
+    /**
+     * Stream over the content of the named case, to be closed by the caller
+     */
+    public InputStream openCase(String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name + " is not in " + zip.getName());
+        }
+        return zip.getInputStream(entry);
+    }
+
+    private String readEntry(ZipEntry entry) {
+        try (InputStream in = zip.getInputStream(entry)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + entry.getName(), e);
+        }
+    }
+
+    private static boolean isPositive(String entryName) {
+        return entryName.startsWith("positive/") || entryName.contains("/positive/");
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}